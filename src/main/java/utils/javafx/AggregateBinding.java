@@ -0,0 +1,278 @@
+package utils.javafx;
+
+import javafx.beans.InvalidationListener;
+import javafx.beans.Observable;
+import javafx.beans.WeakInvalidationListener;
+import javafx.beans.binding.DoubleBinding;
+import javafx.beans.binding.NumberExpression;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Base of the bindings that aggregate one or more number expressions extracted from every item of an
+ * {@code ObservableList}. Each item's expressions are listened to individually: when some of them get invalidated,
+ * the next evaluation only takes the changed items out of the aggregate ({@link #exclude(Item)}) and puts them back
+ * in with their new values ({@link #include(Item)}), instead of going through the whole list again.
+ * <p>
+ * A full pass ({@link #clear()}, then {@link #include(Item)} for every item) only happens on the first evaluation, on
+ * {@link #recompute()}, every {@link #setDriftCorrectionInterval(int) driftCorrectionInterval} deltas, or on every
+ * evaluation if the binding has been created non incremental.
+ * <p>
+ * Items are tracked by occurrence: a bean that is in the list several times, or beans that are equal to each other,
+ * are aggregated once per occurrence, and removing one occurrence leaves the others in.
+ *
+ * @param <E> item class
+ */
+public abstract class AggregateBinding<E> extends DoubleBinding {
+
+    private final boolean incremental;
+    private final List<Function<E, ? extends NumberExpression>> extractors;
+    private final Map<E, List<Item>> items = new IdentityHashMap<>();
+    private int itemCount = 0;
+
+    private final List<Item> changedItems = new ArrayList<>();
+    private boolean recomputeRequested = true;
+    private int driftCorrectionInterval = 0;
+    private int deltasSinceRecompute = 0;
+    private InvalidationCoalescer coalescer = null;
+
+    protected AggregateBinding(ObservableList<E> list, boolean incremental, List<Function<E, ? extends NumberExpression>> extractors) {
+        this.incremental = incremental;
+        this.extractors = extractors;
+        list.forEach(this::addNew);
+        list.addListener((ListChangeListener<? super E>) change -> {
+            while(change.next()) {
+                change.getRemoved().forEach(this::remove);
+                change.getAddedSubList().forEach(this::addNew);
+                if(change.wasAdded() || change.wasRemoved() || change.wasUpdated()) {
+                    requestInvalidation();
+                }
+            }
+        });
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /**
+     * The number of deltas after which the aggregate is thrown away and built again from scratch, to get rid of the
+     * accumulated rounding errors.
+     * @param driftCorrectionInterval number of deltas, 0 (the default) to only rebuild on {@link #recompute()}
+     */
+    public void setDriftCorrectionInterval(int driftCorrectionInterval) {
+        if (driftCorrectionInterval < 0) {
+            throw new IllegalArgumentException("Drift correction interval cannot be negative: " + driftCorrectionInterval);
+        }
+        this.driftCorrectionInterval = driftCorrectionInterval;
+    }
+
+    public int getDriftCorrectionInterval() {
+        return driftCorrectionInterval;
+    }
+
+    /**
+     * Routes the invalidations caused by the changes of the items through a coalescer, so that this binding (and
+     * everything bound to it) is re-evaluated at most once per flush of the coalescer however many items change in
+     * between.
+     * @param coalescer the coalescer, usually shared with other bindings, or null to invalidate immediately (the default)
+     */
+    public void setCoalescer(InvalidationCoalescer coalescer) {
+        this.coalescer = coalescer;
+    }
+
+    public InvalidationCoalescer getCoalescer() {
+        return coalescer;
+    }
+
+    private void requestInvalidation() {
+        if (coalescer == null) {
+            invalidate();
+        } else {
+            coalescer.invalidateLater(this);
+        }
+    }
+
+    /**
+     * Forces the next evaluation to aggregate all the items again, rather than applying the deltas.
+     */
+    public void recompute() {
+        recomputeRequested = true;
+        invalidate();
+    }
+
+    /**
+     * @return the number of items currently aggregated
+     */
+    protected int itemCount() {
+        return itemCount;
+    }
+
+    /**
+     * Resets the aggregate to its empty state, before a full pass.
+     */
+    protected abstract void clear();
+
+    /**
+     * Puts an item in the aggregate, with the values currently held by {@link Item#value(int)}.
+     */
+    protected abstract void include(Item item);
+
+    /**
+     * Takes an item out of the aggregate. {@link Item#value(int)} still holds the values it was included with.
+     */
+    protected abstract void exclude(Item item);
+
+    /**
+     * @return the value of the aggregate, once the changed items have been applied
+     */
+    protected abstract double aggregate();
+
+    private void addNew(E o) {
+        Item item = new Item(o);
+        items.computeIfAbsent(o, bean -> new ArrayList<>(1)).add(item);
+        itemCount++;
+        for (NumberExpression expr : item.exprs) {
+            expr.addListener(item.listener);
+        }
+        item.markChanged();
+    }
+
+    private void remove(E o) {
+        List<Item> occurrences = items.get(o);
+        if (occurrences == null) {
+            return;
+        }
+        Item item = occurrences.remove(occurrences.size() - 1);
+        if (occurrences.isEmpty()) {
+            items.remove(o);
+        }
+        itemCount--;
+        for (NumberExpression expr : item.exprs) {
+            expr.removeListener(item.listener);
+        }
+        if (incremental && item.included && !recomputeRequested) {
+            exclude(item);
+        }
+        item.removed = true;
+    }
+
+    @Override
+    protected double computeValue() {
+        if (!incremental || recomputeRequested || (driftCorrectionInterval > 0 && deltasSinceRecompute >= driftCorrectionInterval)) {
+            clear();
+            for (List<Item> occurrences : items.values()) {
+                for (Item item : occurrences) {
+                    item.changed = false;
+                    item.read();
+                    include(item);
+                    item.included = true;
+                }
+            }
+            recomputeRequested = false;
+            deltasSinceRecompute = 0;
+        } else {
+            for (Item item : changedItems) {
+                if (!item.removed) {
+                    item.changed = false;
+                    if (!item.included) {
+                        item.read();
+                        include(item);
+                        item.included = true;
+                    } else if (item.hasChanged()) {
+                        exclude(item);
+                        item.read();
+                        include(item);
+                    }
+                    deltasSinceRecompute++;
+                }
+            }
+        }
+        changedItems.clear();
+        return aggregate();
+    }
+
+    /**
+     * An item of the aggregate, with the values of its expressions as of the last time it was included.
+     */
+    protected final class Item implements InvalidationListener {
+        private final E bean;
+        private final NumberExpression[] exprs;
+        private final double[] values;
+        private final InvalidationListener listener = new WeakInvalidationListener(this);
+        private boolean included = false;
+        private boolean changed = false;
+        private boolean removed = false;
+
+        /**
+         * Free for the subclasses to store the position of this item in their own structures.
+         */
+        int slot = -1;
+
+        private Item(E bean) {
+            this.bean = bean;
+            this.exprs = new NumberExpression[extractors.size()];
+            for (int i = 0; i < exprs.length; i++) {
+                exprs[i] = extractors.get(i).apply(bean);
+            }
+            this.values = new double[exprs.length];
+        }
+
+        public E getBean() {
+            return bean;
+        }
+
+        /**
+         * @param i index of the extractor
+         * @return the value this item is currently aggregated with
+         */
+        public double value(int i) {
+            return values[i];
+        }
+
+        private void read() {
+            for (int i = 0; i < exprs.length; i++) {
+                values[i] = exprs[i].doubleValue();
+            }
+        }
+
+        private boolean hasChanged() {
+            for (int i = 0; i < exprs.length; i++) {
+                if (Double.compare(values[i], exprs[i].doubleValue()) != 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void markChanged() {
+            if (incremental && !changed && !recomputeRequested) {
+                changed = true;
+                changedItems.add(this);
+                if (changedItems.size() > itemCount) {
+                    // add/remove churn nobody has looked at: cheaper to aggregate everything again than to replay it
+                    changedItems.clear();
+                    recomputeRequested = true;
+                }
+            }
+        }
+
+        @Override
+        public void invalidated(Observable observable) {
+            markChanged();
+            requestInvalidation();
+        }
+
+        @Override
+        public String toString() {
+            return bean + "=" + Arrays.toString(values);
+        }
+    }
+}
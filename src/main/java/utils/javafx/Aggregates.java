@@ -0,0 +1,256 @@
+package utils.javafx;
+
+import javafx.beans.binding.NumberExpression;
+import javafx.collections.ObservableList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Incremental aggregates over an {@code ObservableList}, built on the same extractor pattern as
+ * {@link SumDoubleProperties}: the value(s) of each item are taken from its own {@code NumberExpression}s, and a change
+ * of one item costs O(1) for the sums, counts and means, O(log N) for the min and max.
+ * <p>
+ * All the aggregates are {@code NaN} when the list is empty (but the sum and the count, which are 0), or when any of
+ * the values is {@code NaN}.
+ */
+public final class Aggregates {
+
+    private Aggregates() {
+    }
+
+    public static <E> AggregateBinding<E> sum(ObservableList<E> items, Function<E, ? extends NumberExpression> extractor) {
+        return sum(items, extractor, Summation.PLAIN);
+    }
+
+    public static <E> AggregateBinding<E> sum(ObservableList<E> items, Function<E, ? extends NumberExpression> extractor, Summation summation) {
+        return new SumDoubleProperties<>(items, extractor::apply, SumDoubleProperties.Mode.INCREMENTAL, summation);
+    }
+
+    /**
+     * @return the number of items in the list
+     */
+    public static <E> AggregateBinding<E> count(ObservableList<E> items) {
+        return new Count<>(items);
+    }
+
+    public static <E> AggregateBinding<E> mean(ObservableList<E> items, Function<E, ? extends NumberExpression> extractor) {
+        return mean(items, extractor, Summation.PLAIN);
+    }
+
+    public static <E> AggregateBinding<E> mean(ObservableList<E> items, Function<E, ? extends NumberExpression> extractor, Summation summation) {
+        return new Mean<>(items, extractor, summation);
+    }
+
+    /**
+     * The mean of the values weighted by the weights, sum(value * weight) / sum(weight), e.g. a VWAP with the price as
+     * value and the quantity as weight.
+     */
+    public static <E> AggregateBinding<E> weightedMean(ObservableList<E> items, Function<E, ? extends NumberExpression> value, Function<E, ? extends NumberExpression> weight) {
+        return weightedMean(items, value, weight, Summation.PLAIN);
+    }
+
+    public static <E> AggregateBinding<E> weightedMean(ObservableList<E> items, Function<E, ? extends NumberExpression> value, Function<E, ? extends NumberExpression> weight, Summation summation) {
+        return new WeightedMean<>(items, value, weight, summation);
+    }
+
+    public static <E> AggregateBinding<E> min(ObservableList<E> items, Function<E, ? extends NumberExpression> extractor) {
+        return new Extremum<>(items, extractor, 1.);
+    }
+
+    public static <E> AggregateBinding<E> max(ObservableList<E> items, Function<E, ? extends NumberExpression> extractor) {
+        return new Extremum<>(items, extractor, -1.);
+    }
+
+    private static final class Count<E> extends AggregateBinding<E> {
+
+        private Count(ObservableList<E> items) {
+            super(items, true, Collections.emptyList());
+        }
+
+        @Override
+        protected void clear() {
+        }
+
+        @Override
+        protected void include(Item item) {
+        }
+
+        @Override
+        protected void exclude(Item item) {
+        }
+
+        @Override
+        protected double aggregate() {
+            return itemCount();
+        }
+    }
+
+    private static final class Mean<E> extends AggregateBinding<E> {
+        private final RunningSum total;
+        private int count = 0;
+
+        private Mean(ObservableList<E> items, Function<E, ? extends NumberExpression> extractor, Summation summation) {
+            super(items, true, Collections.singletonList(extractor));
+            this.total = new RunningSum(summation);
+        }
+
+        @Override
+        protected void clear() {
+            total.reset();
+            count = 0;
+        }
+
+        @Override
+        protected void include(Item item) {
+            total.add(item.value(0));
+            count++;
+        }
+
+        @Override
+        protected void exclude(Item item) {
+            total.remove(item.value(0));
+            count--;
+        }
+
+        @Override
+        protected double aggregate() {
+            return total.get() / count;
+        }
+    }
+
+    private static final class WeightedMean<E> extends AggregateBinding<E> {
+        private final RunningSum weightedValues;
+        private final RunningSum weights;
+
+        private WeightedMean(ObservableList<E> items, Function<E, ? extends NumberExpression> value, Function<E, ? extends NumberExpression> weight, Summation summation) {
+            super(items, true, Arrays.asList(value, weight));
+            this.weightedValues = new RunningSum(summation);
+            this.weights = new RunningSum(summation);
+        }
+
+        @Override
+        protected void clear() {
+            weightedValues.reset();
+            weights.reset();
+        }
+
+        @Override
+        protected void include(Item item) {
+            weightedValues.add(item.value(0) * item.value(1));
+            weights.add(item.value(1));
+        }
+
+        @Override
+        protected void exclude(Item item) {
+            weightedValues.remove(item.value(0) * item.value(1));
+            weights.remove(item.value(1));
+        }
+
+        @Override
+        protected double aggregate() {
+            return weightedValues.get() / weights.get();
+        }
+    }
+
+    /**
+     * Min (sign 1) or max (sign -1), kept in a binary heap of the items ordered by sign * value. Each item stores its
+     * position in the heap in its {@link AggregateBinding.Item#slot}, so that it can be taken out in O(log N).
+     */
+    private static final class Extremum<E> extends AggregateBinding<E> {
+        private final double sign;
+        private final List<Item> heap = new ArrayList<>();
+        private int nanCount = 0;
+
+        private Extremum(ObservableList<E> items, Function<E, ? extends NumberExpression> extractor, double sign) {
+            super(items, true, Collections.singletonList(extractor));
+            this.sign = sign;
+        }
+
+        @Override
+        protected void clear() {
+            heap.clear();
+            nanCount = 0;
+        }
+
+        @Override
+        protected void include(Item item) {
+            if (Double.isNaN(item.value(0))) {
+                nanCount++;
+                item.slot = -1;
+            } else {
+                heap.add(item);
+                item.slot = heap.size() - 1;
+                siftUp(item.slot);
+            }
+        }
+
+        @Override
+        protected void exclude(Item item) {
+            if (item.slot < 0) {
+                nanCount--;
+                return;
+            }
+            int slot = item.slot;
+            Item last = heap.remove(heap.size() - 1);
+            if (last != item) {
+                set(slot, last);
+                siftDown(slot);
+                siftUp(last.slot);
+            }
+            item.slot = -1;
+        }
+
+        @Override
+        protected double aggregate() {
+            if (nanCount > 0 || heap.isEmpty()) {
+                return Double.NaN;
+            }
+            return heap.get(0).value(0);
+        }
+
+        private double key(int i) {
+            return sign * heap.get(i).value(0);
+        }
+
+        private void set(int i, Item item) {
+            heap.set(i, item);
+            item.slot = i;
+        }
+
+        private void siftUp(int i) {
+            Item item = heap.get(i);
+            double key = key(i);
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (key(parent) <= key) {
+                    break;
+                }
+                set(i, heap.get(parent));
+                i = parent;
+            }
+            set(i, item);
+        }
+
+        private void siftDown(int i) {
+            Item item = heap.get(i);
+            double key = key(i);
+            int half = heap.size() >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                if (child + 1 < heap.size() && key(child + 1) < key(child)) {
+                    child++;
+                }
+                if (key <= key(child)) {
+                    break;
+                }
+                set(i, heap.get(child));
+                i = child;
+            }
+            set(i, item);
+        }
+    }
+}
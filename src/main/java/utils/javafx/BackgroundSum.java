@@ -0,0 +1,209 @@
+package utils.javafx;
+
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyDoubleProperty;
+import javafx.beans.property.ReadOnlyDoubleWrapper;
+import javafx.util.Duration;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * A sum of keyed contributions that can be updated from any thread (e.g. market-data threads), without marshalling
+ * every tick to the FX thread.
+ * <p>
+ * Updates only land in a concurrent map of pending values, conflated per key: a key updated 10 times between two
+ * publications is only summed once, with its latest value. At a bounded rate, a background thread drains the pending
+ * values into a running total ({@link RunningSum}, so deltas only) and, if the total has changed, publishes it to
+ * {@link #totalProperty()} on the FX thread. Each published total is a consistent snapshot: it is the exact sum of one
+ * value actually set for every key, never of a half-applied update.
+ *
+ * @param <K> key of a contribution, e.g. a position id
+ */
+public class BackgroundSum<K> implements AutoCloseable {
+
+    private static final Object REMOVED = new Object();
+
+    private final ConcurrentHashMap<K, Object> pending = new ConcurrentHashMap<>();
+    private final Map<K, Contribution> contributions = new HashMap<>();
+    private final RunningSum total;
+
+    private final ReadOnlyDoubleWrapper published = new ReadOnlyDoubleWrapper(this, "total", 0.);
+    private final Consumer<Runnable> fxExecutor;
+    private final AtomicBoolean publicationScheduled = new AtomicBoolean(false);
+    private volatile double snapshot = 0.;
+
+    private final ScheduledExecutorService executor;
+    private final boolean ownExecutor;
+    private final ScheduledFuture<?> drainTask;
+
+    private final AtomicLong updates = new AtomicLong();
+    private final AtomicLong conflated = new AtomicLong();
+    private final AtomicLong publications = new AtomicLong();
+
+    /**
+     * Creates a sum drained by its own daemon thread, and published with {@code Platform.runLater}.
+     * @param publishInterval the minimum time between two publications
+     */
+    public BackgroundSum(Duration publishInterval, Summation summation) {
+        this(Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "BackgroundSum");
+            thread.setDaemon(true);
+            return thread;
+        }), true, (long) (publishInterval.toMillis() * 1000), Platform::runLater, summation);
+    }
+
+    /**
+     * @param executor        the executor running the drains, not shut down by {@link #close()}
+     * @param publishInterval the minimum time between two publications, in microseconds. 0 not to schedule any drain,
+     *                        {@link #drain()} then has to be called explicitly
+     * @param fxExecutor      runs the publications on the FX thread
+     */
+    public BackgroundSum(ScheduledExecutorService executor, long publishInterval, Consumer<Runnable> fxExecutor, Summation summation) {
+        this(executor, false, publishInterval, fxExecutor, summation);
+    }
+
+    private BackgroundSum(ScheduledExecutorService executor, boolean ownExecutor, long publishInterval, Consumer<Runnable> fxExecutor, Summation summation) {
+        this.executor = executor;
+        this.ownExecutor = ownExecutor;
+        this.fxExecutor = fxExecutor;
+        this.total = new RunningSum(summation);
+        this.drainTask = publishInterval > 0 ? executor.scheduleAtFixedRate(this::drain, publishInterval, publishInterval, TimeUnit.MICROSECONDS) : null;
+    }
+
+    /**
+     * Sets the contribution of a key. Can be called from any thread.
+     */
+    public void set(K key, double value) {
+        updates.incrementAndGet();
+        if (pending.put(key, value) != null) {
+            conflated.incrementAndGet();
+        }
+    }
+
+    /**
+     * Removes the contribution of a key. Can be called from any thread.
+     */
+    public void remove(K key) {
+        updates.incrementAndGet();
+        if (pending.put(key, REMOVED) != null) {
+            conflated.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return the published total, only updated on the FX thread
+     */
+    public ReadOnlyDoubleProperty totalProperty() {
+        return published.getReadOnlyProperty();
+    }
+
+    public double getTotal() {
+        return published.get();
+    }
+
+    /**
+     * Applies the pending contributions to the total, and schedules its publication if it has changed. Called
+     * periodically by the executor, but can be called from any thread to publish right away.
+     */
+    public synchronized void drain() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        for (K key : pending.keySet()) {
+            Object value = pending.remove(key);
+            Contribution contribution = contributions.get(key);
+            if (value == REMOVED) {
+                if (contribution != null) {
+                    contributions.remove(key);
+                    total.remove(contribution.value);
+                }
+            } else if (value != null) {
+                double newValue = (Double) value;
+                if (contribution == null) {
+                    contributions.put(key, new Contribution(newValue));
+                    total.add(newValue);
+                } else {
+                    total.replace(contribution.value, newValue);
+                    contribution.value = newValue;
+                }
+            }
+        }
+        publishIfChanged();
+    }
+
+    private void publishIfChanged() {
+        double newSnapshot = total.get();
+        if (Double.compare(newSnapshot, snapshot) != 0) {
+            snapshot = newSnapshot;
+            if (publicationScheduled.compareAndSet(false, true)) {
+                fxExecutor.accept(this::publish);
+            }
+        }
+    }
+
+    private void publish() {
+        publicationScheduled.set(false);
+        published.set(snapshot);
+        publications.incrementAndGet();
+    }
+
+    /**
+     * Sums all the contributions again, to get rid of the accumulated rounding errors.
+     */
+    public synchronized void recompute() {
+        total.reset();
+        contributions.values().forEach(contribution -> total.add(contribution.value));
+        publishIfChanged();
+    }
+
+    /**
+     * @return the number of {@link #set}s and {@link #remove}s received
+     */
+    public long getUpdateCount() {
+        return updates.get();
+    }
+
+    /**
+     * @return the number of updates that replaced a pending one before it was drained
+     */
+    public long getConflatedCount() {
+        return conflated.get();
+    }
+
+    /**
+     * @return the number of totals published on the FX thread
+     */
+    public long getPublicationCount() {
+        return publications.get();
+    }
+
+    /**
+     * Stops the periodic drains, and shuts the executor down if it has been created by this sum.
+     */
+    @Override
+    public void close() {
+        if (drainTask != null) {
+            drainTask.cancel(false);
+        }
+        if (ownExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    private static final class Contribution {
+        private double value;
+
+        private Contribution(double value) {
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package utils.javafx;
+
+import java.util.Arrays;
+import java.util.Currency;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Assigns a small, dense ordinal (0, 1, 2...) to every {@link Currency} the first time it is seen, so that per-currency
+ * data can live in plain arrays instead of maps. Looking an ordinal up is allocation-free: ISO currencies are found
+ * through their numeric code in a fixed table. Some currencies share a numeric code (e.g. XFO and XFU, YUM and CSD):
+ * only the first one seen gets the slot of the code, the others are kept in a map.
+ */
+public final class CurrencyIndex {
+
+    private static final AtomicIntegerArray byNumericCode = new AtomicIntegerArray(1000);
+    private static final ConcurrentHashMap<Currency, Integer> others = new ConcurrentHashMap<>();
+    private static volatile Currency[] currencies = new Currency[0];
+    private static volatile int[] fractionDigits = new int[0];
+
+    private CurrencyIndex() {
+    }
+
+    /**
+     * @return the ordinal of the currency, assigned now if this is the first time it is seen
+     */
+    public static int ordinal(Currency ccy) {
+        int code = ccy.getNumericCode();
+        if (code >= 0 && code < byNumericCode.length()) {
+            int ordinal = byNumericCode.get(code) - 1;
+            // Currency instances are unique per currency
+            if (ordinal >= 0 && currencies[ordinal] == ccy) {
+                return ordinal;
+            }
+        }
+        Integer ordinal = others.get(ccy);
+        if (ordinal != null) {
+            return ordinal;
+        }
+        return register(ccy);
+    }
+
+    private static synchronized int register(Currency ccy) {
+        for (int i = 0; i < currencies.length; i++) {
+            if (currencies[i].equals(ccy)) {
+                return i;
+            }
+        }
+        int ordinal = currencies.length;
+        int[] grownDigits = Arrays.copyOf(fractionDigits, ordinal + 1);
+        grownDigits[ordinal] = Math.max(ccy.getDefaultFractionDigits(), 0);
+        fractionDigits = grownDigits;
+        Currency[] grown = Arrays.copyOf(currencies, ordinal + 1);
+        grown[ordinal] = ccy;
+        currencies = grown;
+        int code = ccy.getNumericCode();
+        if (code >= 0 && code < byNumericCode.length() && byNumericCode.get(code) == 0) {
+            byNumericCode.set(code, ordinal + 1);
+        } else {
+            others.put(ccy, ordinal);
+        }
+        return ordinal;
+    }
+
+    /**
+     * @return the currency of an ordinal returned by {@link #ordinal(Currency)}
+     */
+    public static Currency currency(int ordinal) {
+        return currencies[ordinal];
+    }
+
+    /**
+     * @return the number of digits after the decimal point of the currency of an ordinal, 0 for the pseudo-currencies
+     * (gold, SDR...) that have none defined
+     */
+    public static int fractionDigits(int ordinal) {
+        return fractionDigits[ordinal];
+    }
+
+    /**
+     * @return the number of currencies seen so far, all ordinals are below
+     */
+    public static int size() {
+        return currencies.length;
+    }
+}
@@ -0,0 +1,45 @@
+package utils.javafx;
+
+import java.util.function.Function;
+
+/**
+ * A named, searchable field of a bean, read directly from the bean by {@link SearchIndex} (e.g. with a getter
+ * reference) rather than through its JSON representation.
+ *
+ * @param <T> bean class
+ */
+public interface FieldExtractor<T> {
+
+    /**
+     * @return the name of the field, as displayed next to its matches
+     */
+    String getName();
+
+    /**
+     * @return the searchable text of the field for this bean, or null if it has none
+     */
+    String extract(T bean);
+
+    /**
+     * @param getter reads the field, its result is turned into text with {@code String.valueOf}
+     */
+    static <T> FieldExtractor<T> of(String name, Function<T, ?> getter) {
+        return new FieldExtractor<T>() {
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public String extract(T bean) {
+                Object value = getter.apply(bean);
+                return value == null ? null : String.valueOf(value);
+            }
+
+            @Override
+            public String toString() {
+                return "FieldExtractor " + name;
+            }
+        };
+    }
+}
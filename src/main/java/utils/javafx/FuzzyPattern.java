@@ -0,0 +1,110 @@
+package utils.javafx;
+
+import java.util.Arrays;
+
+/**
+ * A lowercase pattern of at most 64 characters, compiled for approximate substring matching with Myers' bit-parallel
+ * algorithm: the edit distance between the pattern and its best matching substring of a text is computed in one pass
+ * over the text, with a few word operations per character.
+ */
+final class FuzzyPattern {
+
+    static final int MAX_LENGTH = 64;
+
+    private final String pattern;
+    private final int maxEdits;
+    // for every character, the positions where it appears in the pattern
+    private final long[] asciiMasks = new long[128];
+    private final char[] otherChars;
+    private final long[] otherMasks;
+    private final long last;
+    private final long all;
+
+    /**
+     * @param pattern  lowercase, 1 to {@link #MAX_LENGTH} characters
+     * @param maxEdits the edits allowed for a text to match
+     */
+    FuzzyPattern(String pattern, int maxEdits) {
+        if (pattern.isEmpty() || pattern.length() > MAX_LENGTH) {
+            throw new IllegalArgumentException("Pattern length should be between 1 and " + MAX_LENGTH + ": " + pattern);
+        }
+        this.pattern = pattern;
+        this.maxEdits = maxEdits;
+        int m = pattern.length();
+        char[] others = new char[m];
+        long[] masks = new long[m];
+        int otherCount = 0;
+        for (int i = 0; i < m; i++) {
+            char c = pattern.charAt(i);
+            if (c < asciiMasks.length) {
+                asciiMasks[c] |= 1L << i;
+            } else {
+                int j = 0;
+                while (j < otherCount && others[j] != c) {
+                    j++;
+                }
+                if (j == otherCount) {
+                    others[otherCount++] = c;
+                }
+                masks[j] |= 1L << i;
+            }
+        }
+        this.otherChars = Arrays.copyOf(others, otherCount);
+        this.otherMasks = Arrays.copyOf(masks, otherCount);
+        this.last = 1L << (m - 1);
+        this.all = m == 64 ? -1L : (1L << m) - 1;
+    }
+
+    String getPattern() {
+        return pattern;
+    }
+
+    int getMaxEdits() {
+        return maxEdits;
+    }
+
+    private long mask(char c) {
+        if (c < asciiMasks.length) {
+            return asciiMasks[c];
+        }
+        for (int i = 0; i < otherChars.length; i++) {
+            if (otherChars[i] == c) {
+                return otherMasks[i];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return the smallest number of edits turning the pattern into a substring of the text
+     */
+    int distance(String text) {
+        long pv = all;
+        long mv = 0;
+        int score = pattern.length();
+        int best = score;
+        for (int i = 0; i < text.length() && best > 0; i++) {
+            long eq = mask(text.charAt(i));
+            long xv = eq | mv;
+            long xh = (((eq & pv) + pv) ^ pv) | eq;
+            long ph = mv | ~(xh | pv);
+            long mh = pv & xh;
+            if ((ph & last) != 0) {
+                score++;
+            } else if ((mh & last) != 0) {
+                score--;
+            }
+            // a match can start anywhere in the text: no carry into the first row
+            ph <<= 1;
+            mh <<= 1;
+            pv = mh | ~(xv | ph);
+            mv = ph & xv;
+            best = Math.min(best, score);
+        }
+        return best;
+    }
+
+    boolean matches(String text) {
+        return distance(text) <= maxEdits;
+    }
+}
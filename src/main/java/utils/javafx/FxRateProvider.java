@@ -0,0 +1,42 @@
+package utils.javafx;
+
+import java.util.Currency;
+import java.util.function.BiPredicate;
+
+/**
+ * Source of the exchange rates used by {@link Money}, see {@link Money#setRateProvider(FxRateProvider)}.
+ */
+public interface FxRateProvider {
+
+    /**
+     * @return the amount of {@code to} one unit of {@code from} is worth
+     * @throws IllegalArgumentException if the rate is not known
+     */
+    double getRate(Currency from, Currency to);
+
+    /**
+     * Same as {@link #getRate(Currency, Currency)}, with the currencies given by their {@link CurrencyIndex} ordinals.
+     */
+    default double getRate(int from, int to) {
+        return getRate(CurrencyIndex.currency(from), CurrencyIndex.currency(to));
+    }
+
+    /**
+     * Registers a listener called every time some rates change. Providers whose rates never change can ignore it.
+     */
+    default void addRateChangeListener(RateChangeListener listener) {
+    }
+
+    default void removeRateChangeListener(RateChangeListener listener) {
+    }
+
+    @FunctionalInterface
+    interface RateChangeListener {
+        /**
+         * Called once per batch of changes, on the thread that made them.
+         * @param changed tells whether the rate of a pair (from, to) has changed
+         * @return the number of bindings (or anything else depending on the rates) this listener has invalidated
+         */
+        int ratesChanged(FxRateProvider provider, BiPredicate<Currency, Currency> changed);
+    }
+}
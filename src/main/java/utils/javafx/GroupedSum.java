@@ -0,0 +1,248 @@
+package utils.javafx;
+
+import javafx.beans.InvalidationListener;
+import javafx.beans.Observable;
+import javafx.beans.WeakInvalidationListener;
+import javafx.beans.binding.DoubleBinding;
+import javafx.beans.binding.DoubleExpression;
+import javafx.beans.binding.NumberExpression;
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import javafx.collections.ObservableMap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Per-group incremental sums over one {@code ObservableList}: every item is classified in a group by a key, and each
+ * group gets its own total, all maintained by a single list listener and one invalidation listener per item (instead of
+ * one {@link SumDoubleProperties} over a {@code FilteredList} per group, which evaluates every change G times).
+ * <p>
+ * The key of an item is computed again when the list reports it as updated, so the list has to be created with an
+ * extractor that includes the properties the classifier depends on (see
+ * {@link FXCollections#observableArrayList(javafx.util.Callback)}). An item whose key has changed is moved from its old
+ * group to its new one, as a delta on both totals.
+ * <p>
+ * A group appears in {@link #getTotals()} with its first item and disappears with its last one. An item that is in the
+ * list several times counts once per occurrence.
+ *
+ * @param <E> item class
+ * @param <K> key class
+ */
+public class GroupedSum<E, K> {
+
+    private final Function<E, K> classifier;
+    private final Function<E, ? extends NumberExpression> extractor;
+    private final Summation summation;
+
+    private final Map<E, List<Member>> members = new IdentityHashMap<>();
+    private final Map<K, Group> groups = new HashMap<>();
+    private final ObservableMap<K, DoubleExpression> totals = FXCollections.observableHashMap();
+    private InvalidationCoalescer coalescer = null;
+
+    public GroupedSum(ObservableList<E> items, Function<E, K> classifier, Function<E, ? extends NumberExpression> extractor) {
+        this(items, classifier, extractor, Summation.PLAIN);
+    }
+
+    public GroupedSum(ObservableList<E> items, Function<E, K> classifier, Function<E, ? extends NumberExpression> extractor, Summation summation) {
+        this.classifier = classifier;
+        this.extractor = extractor;
+        this.summation = summation;
+        items.forEach(this::addNew);
+        items.addListener((ListChangeListener<? super E>) change -> {
+            while(change.next()) {
+                change.getRemoved().forEach(this::remove);
+                change.getAddedSubList().forEach(this::addNew);
+                if(change.wasUpdated()) {
+                    for (int i = change.getFrom(); i < change.getTo(); i++) {
+                        List<Member> occurrences = members.get(change.getList().get(i));
+                        if (occurrences != null) {
+                            occurrences.forEach(this::reclassify);
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the total of every group, by key
+     */
+    public ObservableMap<K, DoubleExpression> getTotals() {
+        return FXCollections.unmodifiableObservableMap(totals);
+    }
+
+    /**
+     * @return the total of a group, or null if no item is currently classified with this key
+     */
+    public DoubleExpression getTotal(K key) {
+        return groups.get(key);
+    }
+
+    /**
+     * Routes the invalidations of the group totals through a coalescer, see {@link AggregateBinding#setCoalescer}.
+     */
+    public void setCoalescer(InvalidationCoalescer coalescer) {
+        this.coalescer = coalescer;
+    }
+
+    /**
+     * Forces the next evaluation of every group to sum its items again, rather than applying the deltas.
+     */
+    public void recompute() {
+        groups.values().forEach(Group::recompute);
+    }
+
+    private void addNew(E o) {
+        Member member = new Member(o, extractor.apply(o));
+        members.computeIfAbsent(o, bean -> new ArrayList<>(1)).add(member);
+        member.expr.addListener(member.listener);
+        join(member, classifier.apply(o));
+    }
+
+    private void remove(E o) {
+        List<Member> occurrences = members.get(o);
+        if (occurrences == null) {
+            return;
+        }
+        Member member = occurrences.remove(occurrences.size() - 1);
+        if (occurrences.isEmpty()) {
+            members.remove(o);
+        }
+        member.expr.removeListener(member.listener);
+        leave(member);
+    }
+
+    private void reclassify(Member member) {
+        K key = classifier.apply(member.bean);
+        if (!Objects.equals(key, member.group.key)) {
+            leave(member);
+            join(member, key);
+        }
+    }
+
+    private void join(Member member, K key) {
+        Group group = groups.get(key);
+        if (group == null) {
+            group = new Group(key);
+            groups.put(key, group);
+            totals.put(key, group);
+        }
+        member.group = group;
+        member.value = 0.;
+        member.changed = false;
+        group.members.add(member);
+        group.markChanged(member);
+        group.requestInvalidation();
+    }
+
+    private void leave(Member member) {
+        Group group = member.group;
+        group.members.remove(member);
+        if (group.members.isEmpty()) {
+            groups.remove(group.key);
+            totals.remove(group.key);
+        }
+        if (!group.recomputeRequested) {
+            group.total.remove(member.value);
+        }
+        member.group = null;
+        group.requestInvalidation();
+    }
+
+    private final class Group extends DoubleBinding {
+        private final K key;
+        private final RunningSum total = new RunningSum(summation);
+        private final Set<Member> members = new HashSet<>();
+        private final List<Member> changedMembers = new ArrayList<>();
+        private boolean recomputeRequested = true;
+
+        private Group(K key) {
+            this.key = key;
+        }
+
+        private void markChanged(Member member) {
+            if (!member.changed && !recomputeRequested) {
+                member.changed = true;
+                changedMembers.add(member);
+                if (changedMembers.size() > members.size()) {
+                    changedMembers.clear();
+                    recomputeRequested = true;
+                }
+            }
+        }
+
+        private void requestInvalidation() {
+            if (coalescer == null) {
+                invalidate();
+            } else {
+                coalescer.invalidateLater(this);
+            }
+        }
+
+        private void recompute() {
+            recomputeRequested = true;
+            invalidate();
+        }
+
+        @Override
+        protected double computeValue() {
+            if (recomputeRequested) {
+                total.reset();
+                for (Member member : members) {
+                    member.changed = false;
+                    member.value = member.expr.doubleValue();
+                    total.add(member.value);
+                }
+                recomputeRequested = false;
+            } else {
+                for (Member member : changedMembers) {
+                    // members that have moved to another group since are that group's business
+                    if (member.group == this) {
+                        member.changed = false;
+                        double value = member.expr.doubleValue();
+                        total.replace(member.value, value);
+                        member.value = value;
+                    }
+                }
+            }
+            changedMembers.clear();
+            return total.get();
+        }
+
+        @Override
+        public String toString() {
+            return "Total of " + key + ": " + (isValid() ? get() : "invalid");
+        }
+    }
+
+    private final class Member implements InvalidationListener {
+        private final E bean;
+        private final NumberExpression expr;
+        private final InvalidationListener listener = new WeakInvalidationListener(this);
+        private Group group;
+        private double value = 0.;
+        private boolean changed = false;
+
+        private Member(E bean, NumberExpression expr) {
+            this.bean = bean;
+            this.expr = expr;
+        }
+
+        @Override
+        public void invalidated(Observable observable) {
+            if (group != null) {
+                group.markChanged(this);
+                group.requestInvalidation();
+            }
+        }
+    }
+}
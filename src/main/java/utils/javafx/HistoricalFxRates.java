@@ -0,0 +1,165 @@
+package utils.javafx;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Currency;
+
+/**
+ * Daily FX fixings, to convert amounts at the rates of a past date. Each currency has one time series of its rate
+ * against a pivot currency, in two primitive arrays sorted by date (epoch days and rates); the rate of a pair on a
+ * date is the cross of the last fixings of both currencies on or before that date, found by binary search.
+ * <p>
+ * The last lookups are cached per thread, in a direct-mapped table keyed by (currency, date): revaluing many amounts
+ * of the same few days mostly hits the cache. Neither the lookups nor the bulk {@link #convert} allocate anything.
+ * <p>
+ * Not thread-safe while fixings are being added: load them first (or synchronize externally); lookups from several
+ * threads are fine afterwards.
+ */
+public class HistoricalFxRates {
+
+    private static final int CACHE_BITS = 12;
+
+    private final Currency pivot;
+    private final int pivotOrdinal;
+    private Series[] series = new Series[0];
+    private int generation = 0;
+    private final ThreadLocal<Cache> caches = ThreadLocal.withInitial(Cache::new);
+
+    public HistoricalFxRates(Currency pivot) {
+        this.pivot = pivot;
+        this.pivotOrdinal = CurrencyIndex.ordinal(pivot);
+    }
+
+    public Currency getPivot() {
+        return pivot;
+    }
+
+    /**
+     * Adds (or replaces) a fixing.
+     * @param rate the amount of the pivot currency one unit of {@code ccy} was worth on {@code date}
+     */
+    public void setRate(Currency ccy, LocalDate date, double rate) {
+        if (!(rate > 0.) || Double.isInfinite(rate)) {
+            throw new IllegalArgumentException("Invalid rate " + rate + " for " + ccy.getCurrencyCode() + " on " + date);
+        }
+        int ordinal = CurrencyIndex.ordinal(ccy);
+        if (ordinal == pivotOrdinal) {
+            throw new IllegalArgumentException("Cannot fix the pivot " + ccy.getCurrencyCode() + " against itself");
+        }
+        if (ordinal >= series.length) {
+            series = Arrays.copyOf(series, Math.max(ordinal + 1, 2 * series.length));
+        }
+        if (series[ordinal] == null) {
+            series[ordinal] = new Series();
+        }
+        series[ordinal].set(Math.toIntExact(date.toEpochDay()), rate);
+        generation++;
+    }
+
+    /**
+     * @return the rate from {@code from} to {@code to} as of {@code date}, from the last fixings on or before it
+     * @throws IllegalArgumentException if one of the currencies has no fixing on or before this date
+     */
+    public double getRate(Currency from, Currency to, LocalDate date) {
+        if (from.equals(to)) {
+            return 1.;
+        }
+        return getRate(CurrencyIndex.ordinal(from), CurrencyIndex.ordinal(to), Math.toIntExact(date.toEpochDay()));
+    }
+
+    /**
+     * Same as {@link #getRate(Currency, Currency, LocalDate)}, with the currencies given by their {@link CurrencyIndex}
+     * ordinals and the date as an epoch day.
+     */
+    public double getRate(int from, int to, int epochDay) {
+        if (from == to) {
+            return 1.;
+        }
+        return toPivot(from, epochDay) / toPivot(to, epochDay);
+    }
+
+    /**
+     * Converts amounts in bulk: {@code result[i] = amounts[i] * rate(from[i], to, epochDays[i])}.
+     * @param from the {@link CurrencyIndex} ordinals of the currencies of the amounts
+     */
+    public void convert(double[] amounts, int[] from, int[] epochDays, int to, double[] result) {
+        for (int i = 0; i < amounts.length; i++) {
+            result[i] = amounts[i] * getRate(from[i], to, epochDays[i]);
+        }
+    }
+
+    private double toPivot(int ordinal, int epochDay) {
+        if (ordinal == pivotOrdinal) {
+            return 1.;
+        }
+        Cache cache = caches.get();
+        if (cache.generation != generation) {
+            cache.clear(generation);
+        }
+        long key = ((long) ordinal << 32) | (epochDay & 0xffffffffL);
+        int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> (64 - CACHE_BITS));
+        if (cache.keys[slot] == key) {
+            return cache.values[slot];
+        }
+        double rate = lookup(ordinal, epochDay);
+        cache.keys[slot] = key;
+        cache.values[slot] = rate;
+        return rate;
+    }
+
+    private double lookup(int ordinal, int epochDay) {
+        Series fixings = ordinal < series.length ? series[ordinal] : null;
+        int i = fixings == null ? -1 : fixings.indexAsOf(epochDay);
+        if (i < 0) {
+            throw new IllegalArgumentException("No " + CurrencyIndex.currency(ordinal).getCurrencyCode() + " vs " + pivot.getCurrencyCode() + " rate on or before " + LocalDate.ofEpochDay(epochDay));
+        }
+        return fixings.rates[i];
+    }
+
+    /**
+     * The fixings of one currency, sorted by date.
+     */
+    private static final class Series {
+        private int[] days = new int[16];
+        private double[] rates = new double[16];
+        private int size = 0;
+
+        private void set(int day, double rate) {
+            int i = Arrays.binarySearch(days, 0, size, day);
+            if (i >= 0) {
+                rates[i] = rate;
+                return;
+            }
+            i = -i - 1;
+            if (size == days.length) {
+                days = Arrays.copyOf(days, 2 * size);
+                rates = Arrays.copyOf(rates, 2 * size);
+            }
+            System.arraycopy(days, i, days, i + 1, size - i);
+            System.arraycopy(rates, i, rates, i + 1, size - i);
+            days[i] = day;
+            rates[i] = rate;
+            size++;
+        }
+
+        /**
+         * @return the index of the last fixing on or before the day, -1 if there is none
+         */
+        private int indexAsOf(int day) {
+            int i = Arrays.binarySearch(days, 0, size, day);
+            return i >= 0 ? i : -i - 2;
+        }
+    }
+
+    private static final class Cache {
+        private final long[] keys = new long[1 << CACHE_BITS];
+        private final double[] values = new double[1 << CACHE_BITS];
+        private int generation = -1;
+
+        private void clear(int generation) {
+            // no valid key has all its high bits set: ordinals are positive
+            Arrays.fill(keys, -1L);
+            this.generation = generation;
+        }
+    }
+}
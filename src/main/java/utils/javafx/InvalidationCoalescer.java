@@ -0,0 +1,154 @@
+package utils.javafx;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.beans.binding.Binding;
+import javafx.util.Duration;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Batches the invalidations of high-frequency bindings: instead of being invalidated (and re-evaluated by whoever
+ * listens to them) on every change of their dependencies, the bindings registered through
+ * {@link #invalidateLater(Binding)} are invalidated once, all together, when the coalescer flushes. Until then they
+ * keep returning the value they had at the previous flush.
+ * <p>
+ * One coalescer can (and should) be shared by many bindings. It is not thread-safe, like the bindings it serves: it
+ * must be used from the FX thread only.
+ */
+public class InvalidationCoalescer {
+
+    private final Consumer<Runnable> scheduler;
+    private final Set<Binding<?>> pending = new LinkedHashSet<>();
+    private boolean flushScheduled = false;
+
+    private long requested = 0;
+    private long absorbed = 0;
+    private long flushes = 0;
+
+    /**
+     * @param scheduler called with the flush task when the first invalidation of a batch is requested, expected to run
+     *                  it later on the FX thread
+     */
+    public InvalidationCoalescer(Consumer<Runnable> scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * @return a coalescer that flushes at most once per JavaFX pulse, with {@code Platform.runLater}
+     */
+    public static InvalidationCoalescer perPulse() {
+        return new InvalidationCoalescer(Platform::runLater);
+    }
+
+    /**
+     * @return a coalescer that flushes at most once per {@code interval}, on the first pulse after the interval has
+     * elapsed
+     */
+    public static InvalidationCoalescer every(Duration interval) {
+        return new InvalidationCoalescer(new IntervalTimer((long) (interval.toMillis() * 1_000_000)));
+    }
+
+    /**
+     * Requests the invalidation of a binding at the next flush. Requests for a binding that is already pending are
+     * absorbed.
+     */
+    public void invalidateLater(Binding<?> binding) {
+        requested++;
+        if (!pending.add(binding)) {
+            absorbed++;
+            return;
+        }
+        if (!flushScheduled) {
+            flushScheduled = true;
+            scheduler.accept(this::flush);
+        }
+    }
+
+    /**
+     * Invalidates all the pending bindings now.
+     */
+    public void flush() {
+        flushScheduled = false;
+        if (pending.isEmpty()) {
+            return;
+        }
+        flushes++;
+        List<Binding<?>> toInvalidate = new ArrayList<>(pending);
+        pending.clear();
+        toInvalidate.forEach(Binding::invalidate);
+    }
+
+    /**
+     * @return the number of bindings waiting for the next flush
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * @return the number of invalidations requested since the creation (or the last reset) of this coalescer
+     */
+    public long getRequestedCount() {
+        return requested;
+    }
+
+    /**
+     * @return the number of requested invalidations that did not cause an invalidation of their own, because the
+     * binding was already pending
+     */
+    public long getAbsorbedCount() {
+        return absorbed;
+    }
+
+    /**
+     * @return the number of flushes that invalidated at least one binding
+     */
+    public long getFlushCount() {
+        return flushes;
+    }
+
+    public void resetCounters() {
+        requested = 0;
+        absorbed = 0;
+        flushes = 0;
+    }
+
+    /**
+     * Runs the flush task on the first pulse at least {@code intervalNanos} after the previous run, and stays idle
+     * when there is nothing to flush.
+     */
+    private static final class IntervalTimer extends AnimationTimer implements Consumer<Runnable> {
+        private final long intervalNanos;
+        private long lastRun = Long.MIN_VALUE;
+        private Runnable task;
+
+        private IntervalTimer(long intervalNanos) {
+            this.intervalNanos = intervalNanos;
+        }
+
+        @Override
+        public void accept(Runnable task) {
+            this.task = task;
+            start();
+        }
+
+        @Override
+        public void handle(long now) {
+            if (lastRun != Long.MIN_VALUE && now - lastRun < intervalNanos) {
+                return;
+            }
+            lastRun = now;
+            stop();
+            Runnable toRun = task;
+            task = null;
+            if (toRun != null) {
+                toRun.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package utils.javafx;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * The per-bean state of the current results of a search (e.g. which fields matched), holding nothing for the beans that
+ * are not among them.
+ * <p>
+ * Each new result set is a generation: the state of the beans still in the results is stamped and reused, that of the
+ * beans that have left them is dropped when the generation ends, so the footprint follows the size of the current
+ * results rather than the number of beans ever matched. A bean removed from the searched collection can also be evicted
+ * right away.
+ *
+ * @param <T> bean class
+ * @param <V> state class
+ */
+public class MatchState<T, V> {
+
+    private final Supplier<V> factory;
+    private final Map<T, Slot<V>> slots = new HashMap<>();
+    private long generation = 0;
+    private long evictions = 0;
+
+    /**
+     * @param factory creates the state of a bean entering the results
+     */
+    public MatchState(Supplier<V> factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * Starts a new result set: the beans not {@link #stamp}ed before {@link #endGeneration()} will be dropped.
+     */
+    public void beginGeneration() {
+        generation++;
+    }
+
+    /**
+     * @return the state of a bean in the current results, created if it was not in the previous ones
+     */
+    public V stamp(T bean) {
+        Slot<V> slot = slots.get(bean);
+        if (slot == null) {
+            slot = new Slot<>(factory.get());
+            slots.put(bean, slot);
+        }
+        slot.generation = generation;
+        return slot.value;
+    }
+
+    /**
+     * Drops the state of the beans that are not in the current results.
+     */
+    public void endGeneration() {
+        Iterator<Slot<V>> iterator = slots.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().generation != generation) {
+                iterator.remove();
+                evictions++;
+            }
+        }
+    }
+
+    /**
+     * Drops the state of all the beans, for an empty result set.
+     */
+    public void clear() {
+        evictions += slots.size();
+        slots.clear();
+        generation++;
+    }
+
+    /**
+     * @return the state of a bean, null if it is not in the current results
+     */
+    public V get(T bean) {
+        Slot<V> slot = slots.get(bean);
+        return slot == null ? null : slot.value;
+    }
+
+    /**
+     * Drops the state of a bean, e.g. once it has left the searched collection.
+     * @return whether it had one
+     */
+    public boolean evict(T bean) {
+        if (slots.remove(bean) != null) {
+            evictions++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of beans with a state, i.e. the footprint
+     */
+    public int size() {
+        return slots.size();
+    }
+
+    /**
+     * @return the current generation, incremented by every result set
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * @return the number of states dropped so far
+     */
+    public long getEvictionCount() {
+        return evictions;
+    }
+
+    private static final class Slot<V> {
+        private final V value;
+        private long generation;
+
+        private Slot(V value) {
+            this.value = value;
+        }
+    }
+}
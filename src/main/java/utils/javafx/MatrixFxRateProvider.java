@@ -0,0 +1,229 @@
+package utils.javafx;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Currency;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiPredicate;
+
+/**
+ * An {@link FxRateProvider} holding its rates in a dense matrix indexed by {@link CurrencyIndex} ordinals. Quotes are
+ * set per pair. Every other rate is resolved when the quotes change, from the inverse quote or by triangulation
+ * through a pivot currency. The resolved rates are cached in the matrix, so a lookup is two array reads, O(1) and
+ * allocation-free.
+ * <p>
+ * Quotes can be set from any thread, one at a time or in a batch ({@link #beginUpdate()}). Lookups never lock: they
+ * read the current matrix, which is immutable and replaced as a whole on every change, so a batch is seen all at once.
+ * The {@link RateChangeListener}s are notified once per change or batch, on the thread that made it: {@link Money}
+ * invalidates its rate bindings right away if that is the FX thread, else hands the invalidation over to the FX thread.
+ */
+public class MatrixFxRateProvider implements FxRateProvider {
+
+    private final Currency pivot;
+    private double[] quotes = new double[0];
+    private int quotesSize = 0;
+    private volatile RateMatrix rates = new RateMatrix(0, new double[0]);
+    private final List<RateChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param pivot the currency the crosses are triangulated through, e.g. USD
+     */
+    public MatrixFxRateProvider(Currency pivot) {
+        this.pivot = pivot;
+        CurrencyIndex.ordinal(pivot);
+    }
+
+    public Currency getPivot() {
+        return pivot;
+    }
+
+    /**
+     * Sets the quote of a pair. The inverse pair and the crosses going through the pivot are resolved from it unless
+     * they are quoted themselves.
+     * @param rate the amount of {@code to} one unit of {@code from} is worth
+     * @return see {@link Update#commit()}
+     */
+    public int setRate(Currency from, Currency to, double rate) {
+        return beginUpdate().setRate(from, to, rate).commit();
+    }
+
+    /**
+     * Starts a batch of quotes, applied all together by {@link Update#commit()}: the lookups see either none or all of
+     * them, and the listeners are notified once for the whole batch.
+     */
+    public Update beginUpdate() {
+        return new Update();
+    }
+
+    @Override
+    public void addRateChangeListener(RateChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void removeRateChangeListener(RateChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    private int apply(List<Quote> batch) {
+        RateMatrix previous;
+        RateMatrix next;
+        synchronized (this) {
+            for (Quote quote : batch) {
+                ensureQuotesSize(Math.max(quote.from, quote.to) + 1);
+                quotes[quote.from * quotesSize + quote.to] = quote.rate;
+            }
+            previous = rates;
+            next = resolve();
+            rates = next;
+        }
+        BiPredicate<Currency, Currency> changed = (from, to) -> {
+            int i = CurrencyIndex.ordinal(from);
+            int j = CurrencyIndex.ordinal(to);
+            return Double.compare(previous.get(i, j), next.get(i, j)) != 0;
+        };
+        int invalidated = 0;
+        for (RateChangeListener listener : listeners) {
+            invalidated += listener.ratesChanged(this, changed);
+        }
+        return invalidated;
+    }
+
+    @Override
+    public double getRate(Currency from, Currency to) {
+        if (from.equals(to)) {
+            return 1.;
+        }
+        return getRate(CurrencyIndex.ordinal(from), CurrencyIndex.ordinal(to));
+    }
+
+    @Override
+    public double getRate(int from, int to) {
+        double rate = rates.get(from, to);
+        if (Double.isNaN(rate)) {
+            throw new IllegalArgumentException("Unknown currency " + CurrencyIndex.currency(from).getCurrencyCode() + " vs " + CurrencyIndex.currency(to).getCurrencyCode());
+        }
+        return rate;
+    }
+
+    private void ensureQuotesSize(int size) {
+        if (size <= quotesSize) {
+            return;
+        }
+        double[] grown = new double[size * size];
+        Arrays.fill(grown, Double.NaN);
+        for (int i = 0; i < quotesSize; i++) {
+            System.arraycopy(quotes, i * quotesSize, grown, i * size, quotesSize);
+        }
+        quotes = grown;
+        quotesSize = size;
+    }
+
+    private double quote(int from, int to) {
+        if (from == to) {
+            return 1.;
+        }
+        double rate = quotes[from * quotesSize + to];
+        return Double.isNaN(rate) ? 1. / quotes[to * quotesSize + from] : rate;
+    }
+
+    private RateMatrix resolve() {
+        int n = quotesSize;
+        int p = CurrencyIndex.ordinal(pivot);
+        double[] resolved = new double[n * n];
+        if (p >= n) {
+            // nothing is quoted against the pivot, only the direct quotes and their inverses are known
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++) {
+                    resolved[i * n + j] = quote(i, j);
+                }
+            }
+            return new RateMatrix(n, resolved);
+        }
+        double[] toPivot = new double[n];
+        for (int i = 0; i < n; i++) {
+            toPivot[i] = quote(i, p);
+        }
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                double rate = quote(i, j);
+                resolved[i * n + j] = Double.isNaN(rate) ? toPivot[i] / toPivot[j] : rate;
+            }
+        }
+        return new RateMatrix(n, resolved);
+    }
+
+    /**
+     * A batch of quotes, see {@link #beginUpdate()}.
+     */
+    public final class Update {
+        private final List<Quote> batch = new ArrayList<>();
+        private boolean committed = false;
+
+        private Update() {
+        }
+
+        /**
+         * @see MatrixFxRateProvider#setRate(Currency, Currency, double)
+         */
+        public Update setRate(Currency from, Currency to, double rate) {
+            if (!(rate > 0.) || Double.isInfinite(rate)) {
+                throw new IllegalArgumentException("Invalid rate " + rate + " for " + from.getCurrencyCode() + " vs " + to.getCurrencyCode());
+            }
+            if (from.equals(to)) {
+                throw new IllegalArgumentException("Cannot quote " + from.getCurrencyCode() + " against itself");
+            }
+            batch.add(new Quote(CurrencyIndex.ordinal(from), CurrencyIndex.ordinal(to), rate));
+            return this;
+        }
+
+        /**
+         * Applies the whole batch, and notifies the listeners.
+         * @return the number of bindings invalidated by the listeners, i.e. by {@link Money} if this is its provider (when
+         * Money has deferred the invalidation to the FX thread, the number of bindings it is about to invalidate)
+         */
+        public int commit() {
+            if (committed) {
+                throw new IllegalStateException("Update already committed");
+            }
+            committed = true;
+            return apply(batch);
+        }
+    }
+
+    private static final class Quote {
+        private final int from;
+        private final int to;
+        private final double rate;
+
+        private Quote(int from, int to, double rate) {
+            this.from = from;
+            this.to = to;
+            this.rate = rate;
+        }
+    }
+
+    /**
+     * An immutable snapshot of all the resolved rates, {@code NaN} where a rate is unknown.
+     */
+    static final class RateMatrix {
+        private final int size;
+        private final double[] rates;
+
+        RateMatrix(int size, double[] rates) {
+            this.size = size;
+            this.rates = rates;
+        }
+
+        double get(int from, int to) {
+            if (from == to) {
+                return 1.;
+            }
+            if (from >= size || to >= size) {
+                return Double.NaN;
+            }
+            return rates[from * size + to];
+        }
+    }
+}
@@ -1,31 +1,43 @@
 package utils.javafx;
 
+import javafx.application.Platform;
 import javafx.beans.binding.Bindings;
 import javafx.beans.binding.DoubleExpression;
 import javafx.beans.binding.ObjectExpression;
 import javafx.beans.binding.StringExpression;
+import javafx.beans.property.ReadOnlyObjectWrapper;
 import javafx.beans.property.SimpleDoubleProperty;
-import javafx.beans.property.SimpleObjectProperty;
 import javafx.collections.ObservableList;
 
+import java.time.LocalDate;
 import java.util.Currency;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.BiPredicate;
 import java.util.function.Function;
 
 /**
  * Created by mac on 09/04/2016.
  */
 public class Money {
+    private static final ConcurrentHashMap<Currency, ObjectExpression<Currency>> fixedCurrencies = new ConcurrentHashMap<>();
+    private static final FxRateProvider.RateChangeListener rateListener = Money::ratesChanged;
+    private static volatile Executor fxExecutor = Platform::runLater;
+    private static volatile FxRateProvider rateProvider = defaultRateProvider();
+    private static volatile HistoricalFxRates historicalRates = new HistoricalFxRates(Currency.getInstance("USD"));
+
     private final DoubleExpression amount;
     private final ObjectExpression<Currency> ccy;
 
     public Money(double amount, Currency ccy) {
         this.amount = new SimpleDoubleProperty(amount);
-        this.ccy = new SimpleObjectProperty<>(ccy);
+        this.ccy = fixedCurrency(ccy);
     }
 
     public Money(DoubleExpression amount, Currency ccy) {
         this.amount = amount;
-        this.ccy = new SimpleObjectProperty<>(ccy);
+        this.ccy = fixedCurrency(ccy);
     }
 
     public Money(DoubleExpression amount, ObjectExpression<Currency> ccy) {
@@ -38,6 +50,28 @@ public class Money {
         this.ccy = ccy;
     }
 
+    /**
+     * @return the current value of this amount, see {@link MoneyValue#of(Money)}
+     */
+    public MoneyValue getValue() {
+        return MoneyValue.of(this);
+    }
+
+    /**
+     * @return a formula starting from this amount, to compose arithmetic into a single binding
+     */
+    public MoneyFormula toFormula() {
+        return MoneyFormula.of(this);
+    }
+
+    /**
+     * @return a read-only expression of a currency, shared by all the amounts created with this fixed currency: they can
+     * be added to each other, and share their rate bindings
+     */
+    static ObjectExpression<Currency> fixedCurrency(Currency ccy) {
+        return fixedCurrencies.computeIfAbsent(ccy, c -> new ReadOnlyObjectWrapper<>(c).getReadOnlyProperty());
+    }
+
     public Number getAmount() {
         return amount.get();
     }
@@ -46,14 +80,28 @@ public class Money {
         return amount;
     }
 
+    public ObjectExpression<Currency> currencyProperty() {
+        return ccy;
+    }
+
+    /**
+     * @param format the format of the amount, followed by the symbol of the currency, see {@link MoneyFormat}
+     */
     public StringExpression formattedProperty(String format) {
-        return Bindings.createStringBinding(() -> String.format(format + "%s", amount.get(), ccy.get().getSymbol()), amount, ccy);
+        return MoneyFormat.formattedBinding(amount, ccy, format, Locale.getDefault(Locale.Category.FORMAT));
     }
 
     public DoubleExpression inCurrency(Currency ccy) {
         return amount.multiply(getRate(this.ccy, ccy));
     }
 
+    /**
+     * @return this amount converted at the rate of a past date, see {@link #setHistoricalRates(HistoricalFxRates)}
+     */
+    public DoubleExpression inCurrency(Currency ccy, LocalDate date) {
+        return amount.multiply(Bindings.createDoubleBinding(() -> historicalRates.getRate(this.ccy.get(), ccy, date), this.ccy));
+    }
+
     public DoubleExpression inCurrency(ObjectExpression<Currency> ccy) {
         DoubleExpression rate = getRate(this.ccy, ccy);
         return amount.multiply(rate);
@@ -73,31 +121,131 @@ public class Money {
         return new Money(amount, ccy);
     }
 
+    /**
+     * Same as {@link #sum(ObservableList, Function, Currency)}, but the total is kept incrementally (see
+     * {@link SumDoubleProperties.Mode#INCREMENTAL}) and accumulated with the given {@link Summation}.
+     */
+    public static <E> Money sum(ObservableList<E> list, Function<E, Money> extractor, Currency ccy, Summation summation) {
+        DoubleExpression amount = new SumDoubleProperties<>(list, e -> extractor.apply(e).inCurrency(ccy), SumDoubleProperties.Mode.INCREMENTAL, summation);
+        return new Money(amount, ccy);
+    }
+
+    /**
+     * Same as {@link #sum(ObservableList, Function, ObjectExpression)}, but the total is kept incrementally (see
+     * {@link SumDoubleProperties.Mode#INCREMENTAL}) and accumulated with the given {@link Summation}.
+     */
+    public static <E> Money sum(ObservableList<E> list, Function<E, Money> extractor, ObjectExpression<Currency> ccy, Summation summation) {
+        DoubleExpression amount = new SumDoubleProperties<>(list, e -> extractor.apply(e).inCurrency(ccy), SumDoubleProperties.Mode.INCREMENTAL, summation);
+        return new Money(amount, ccy);
+    }
+
+    /**
+     * Same as {@link #sum(ObservableList, Function, Currency, Summation)}, but the amounts are summed per currency and
+     * each subtotal is converted once (see {@link MultiCurrencySum}).
+     */
+    public static <E> Money sumByCurrency(ObservableList<E> list, Function<E, Money> extractor, Currency ccy, Summation summation) {
+        return new Money(new MultiCurrencySum<>(list, extractor, ccy, summation), ccy);
+    }
+
+    /**
+     * Same as {@link #sum(ObservableList, Function, ObjectExpression, Summation)}, but the amounts are summed per
+     * currency and each subtotal is converted once: changing {@code ccy} costs O(#currencies) instead of O(N) (see
+     * {@link MultiCurrencySum}).
+     */
+    public static <E> Money sumByCurrency(ObservableList<E> list, Function<E, Money> extractor, ObjectExpression<Currency> ccy, Summation summation) {
+        return new Money(new MultiCurrencySum<>(list, extractor, ccy, summation), ccy);
+    }
+
+    /**
+     * @return the binding of the rate from {@code ccy1} to {@code ccy2}, shared by all the callers asking for the same
+     * pair and only weakly cached
+     */
     public static DoubleExpression getRate(Currency ccy1, Currency ccy2) {
-        return Bindings.createDoubleBinding(() -> getFixedRate(ccy1, ccy2));
+        return RateBindings.get(ccy1, ccy2);
     }
 
     public static DoubleExpression getRate(ObjectExpression<Currency> ccy1, ObjectExpression<Currency> ccy2) {
-        return Bindings.createDoubleBinding(() -> getFixedRate(ccy1.get(), ccy2.get()), ccy1, ccy2);
+        return RateBindings.get(ccy1, ccy2);
     }
 
     public static DoubleExpression getRate(Currency ccy1, ObjectExpression<Currency> ccy2) {
-        return Bindings.createDoubleBinding(() -> getFixedRate(ccy1, ccy2.get()), ccy2);
+        return RateBindings.get(ccy1, ccy2);
     }
 
     public static DoubleExpression getRate(ObjectExpression<Currency> ccy1, Currency ccy2) {
-        return Bindings.createDoubleBinding(() -> getFixedRate(ccy1.get(), ccy2), ccy1);
+        return RateBindings.get(ccy1, ccy2);
     }
 
+    /**
+     * @return the rate from {@code ccy1} to {@code ccy2}, as given by the current {@link #getRateProvider() rate provider}
+     * @throws IllegalArgumentException if the provider does not know this rate
+     */
     public static double getFixedRate(Currency ccy1, Currency ccy2) {
-        if (ccy1.equals(ccy2)) {
-            return 1.;
-        } else if (ccy1.getCurrencyCode().equals("USD") && ccy2.getCurrencyCode().equals("EUR")) {
-            return 1. / 1.2;
-        } else if (ccy1.getCurrencyCode().equals("EUR") && ccy2.getCurrencyCode().equals("USD")) {
-            return 1.2;
+        return rateProvider.getRate(ccy1, ccy2);
+    }
+
+    public static FxRateProvider getRateProvider() {
+        return rateProvider;
+    }
+
+    /**
+     * Replaces the source of all the rates, and invalidates all the rate bindings. To be called from the FX thread.
+     * <p>
+     * The provider is listened to: when some of its rates change (e.g. with a {@link MatrixFxRateProvider#beginUpdate()
+     * batch}), only the bindings of the pairs that have changed are invalidated, once. Changes made on another thread
+     * are invalidated later on the FX thread, through the {@link #setFxExecutor FX executor}.
+     */
+    public static void setRateProvider(FxRateProvider provider) {
+        FxRateProvider previous = rateProvider;
+        previous.removeRateChangeListener(rateListener);
+        provider.addRateChangeListener(rateListener);
+        rateProvider = provider;
+        RateBindings.invalidateAll();
+    }
+
+    /**
+     * Sets the executor the changes of rates made outside of the FX thread are handed to: the rate bindings are JavaFX
+     * bindings, only to be invalidated on the FX thread. Replacing the rate provider leaves it as it is.
+     * @param fxExecutor runs the invalidations on the FX thread, {@code Platform::runLater} by default
+     */
+    public static void setFxExecutor(Executor fxExecutor) {
+        Money.fxExecutor = fxExecutor;
+    }
+
+    /**
+     * Invalidates the rate bindings of the pairs that have changed, right away on the FX thread, else through the FX
+     * executor.
+     * @return the number of bindings invalidated, or to be invalidated as of this call if the invalidation is deferred
+     */
+    private static int ratesChanged(FxRateProvider provider, BiPredicate<Currency, Currency> changed) {
+        if (Platform.isFxApplicationThread()) {
+            return RateBindings.invalidate(changed);
         }
-        throw new IllegalArgumentException("Unknown currency " + ccy1.getCurrencyCode() + " vs " + ccy2.getCurrencyCode());
+        int affected = RateBindings.count(changed);
+        fxExecutor.execute(() -> RateBindings.invalidate(changed));
+        return affected;
+    }
+
+    public static HistoricalFxRates getHistoricalRates() {
+        return historicalRates;
+    }
+
+    /**
+     * Replaces the fixings used by {@link #inCurrency(Currency, LocalDate)}, by default an empty set with USD as pivot.
+     * The conversions already evaluated are not affected.
+     */
+    public static void setHistoricalRates(HistoricalFxRates rates) {
+        historicalRates = rates;
+    }
+
+    /**
+     * @return the provider in place until {@link #setRateProvider(FxRateProvider)} is called: USD pivot, EUR/USD at 1.2
+     */
+    private static FxRateProvider defaultRateProvider() {
+        MatrixFxRateProvider provider = new MatrixFxRateProvider(Currency.getInstance("USD"));
+        provider.setRate(Currency.getInstance("EUR"), Currency.getInstance("USD"), 1.2);
+        provider.addRateChangeListener(rateListener);
+        return provider;
     }
 
     public Money multiply(DoubleExpression mul) {
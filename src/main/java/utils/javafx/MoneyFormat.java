@@ -0,0 +1,197 @@
+package utils.javafx;
+
+import javafx.beans.binding.DoubleExpression;
+import javafx.beans.binding.ObjectExpression;
+import javafx.beans.binding.StringBinding;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.DecimalFormatSymbols;
+import java.util.Currency;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A compiled {@code String.format(locale, format + "%s", amount, symbol)}, cached by (format, currency, locale).
+ * <p>
+ * Formats made of literal text around a single {@code %f} or {@code %.Nf} are parsed once, and then rendered into a
+ * per-thread buffer without boxing the amount or looking the symbol up again. The result is the same as
+ * {@code String.format}'s, rounding half-up on the shortest decimal representation of the amount, {@code -0.00},
+ * {@code NaN} and {@code Infinity} included. Any other format falls back to {@code String.format}.
+ */
+public final class MoneyFormat {
+
+    private static final Pattern FIXED = Pattern.compile("([^%]*)%(?:\\.(\\d))?f([^%]*)");
+    private static final long[] POWERS_OF_TEN = {1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L, 1_000_000_000L};
+    private static final ConcurrentHashMap<Key, MoneyFormat> cache = new ConcurrentHashMap<>();
+    private static final ThreadLocal<StringBuilder> buffer = ThreadLocal.withInitial(() -> new StringBuilder(32));
+
+    private final String format;
+    private final Locale locale;
+    private final String symbol;
+    private final boolean fixed;
+    private final String prefix;
+    private final String suffix;
+    private final int precision;
+    private final char decimalSeparator;
+
+    private MoneyFormat(String format, Currency ccy, Locale locale) {
+        this.format = format;
+        this.locale = locale;
+        this.symbol = ccy.getSymbol(locale);
+        DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(locale);
+        Matcher matcher = FIXED.matcher(format);
+        this.fixed = matcher.matches() && symbols.getZeroDigit() == '0';
+        this.prefix = fixed ? matcher.group(1) : null;
+        this.precision = fixed ? (matcher.group(2) == null ? 6 : Integer.parseInt(matcher.group(2))) : 0;
+        this.suffix = fixed ? matcher.group(3) + symbol : null;
+        this.decimalSeparator = symbols.getDecimalSeparator();
+    }
+
+    /**
+     * @param format the format of the amount, e.g. {@code "%.2f "}, followed by the symbol of the currency
+     */
+    public static MoneyFormat get(String format, Currency ccy, Locale locale) {
+        return cache.computeIfAbsent(new Key(format, ccy, locale), key -> new MoneyFormat(format, ccy, locale));
+    }
+
+    /**
+     * @return a binding of the formatted amount, which only renders the amount again when it has actually changed
+     */
+    public static StringBinding formattedBinding(DoubleExpression amount, ObjectExpression<Currency> ccy, String format, Locale locale) {
+        return new FormattedBinding(amount, ccy, format, locale);
+    }
+
+    public String format(double amount) {
+        return format(amount, null);
+    }
+
+    /**
+     * @param previous a previous result of this format, returned instead of a new string if the text is the same
+     */
+    public String format(double amount, String previous) {
+        if (!fixed) {
+            String formatted = String.format(locale, format + "%s", amount, symbol);
+            return formatted.equals(previous) ? previous : formatted;
+        }
+        StringBuilder sb = buffer.get();
+        sb.setLength(0);
+        sb.append(prefix);
+        if (!appendFixed(sb, amount)) {
+            return format(amount, previous, String.format(locale, "%." + precision + "f", amount));
+        }
+        sb.append(suffix);
+        return previous != null && previous.contentEquals(sb) ? previous : sb.toString();
+    }
+
+    private String format(double amount, String previous, String formattedAmount) {
+        String formatted = prefix + formattedAmount + suffix;
+        return formatted.equals(previous) ? previous : formatted;
+    }
+
+    /**
+     * @return false if the amount is too large for the fast path
+     */
+    private boolean appendFixed(StringBuilder sb, double amount) {
+        if (Double.isNaN(amount)) {
+            sb.append("NaN");
+            return true;
+        }
+        if (Double.doubleToRawLongBits(amount) < 0) {
+            sb.append('-');
+        }
+        double abs = Math.abs(amount);
+        if (Double.isInfinite(abs)) {
+            sb.append("Infinity");
+            return true;
+        }
+        long scale = POWERS_OF_TEN[precision];
+        double scaled = abs * scale;
+        if (scaled >= 1e15) {
+            return false;
+        }
+        long units;
+        if (Math.abs(scaled - Math.floor(scaled) - .5) > 4 * Math.ulp(scaled)) {
+            // far enough from a tie for the rounding errors of the multiplication not to matter
+            units = Math.round(scaled);
+        } else {
+            units = BigDecimal.valueOf(abs).setScale(precision, RoundingMode.HALF_UP).unscaledValue().longValue();
+        }
+        sb.append(units / scale);
+        if (precision > 0) {
+            sb.append(decimalSeparator);
+            long fraction = units % scale;
+            for (long p = scale / 10; p > fraction && p > 1; p /= 10) {
+                sb.append('0');
+            }
+            sb.append(fraction);
+        }
+        return true;
+    }
+
+    private static final class FormattedBinding extends StringBinding {
+        private final DoubleExpression amount;
+        private final ObjectExpression<Currency> ccy;
+        private final String format;
+        private final Locale locale;
+        private Currency lastCurrency;
+        private MoneyFormat moneyFormat;
+        private long lastBits;
+        private String last;
+
+        private FormattedBinding(DoubleExpression amount, ObjectExpression<Currency> ccy, String format, Locale locale) {
+            this.amount = amount;
+            this.ccy = ccy;
+            this.format = format;
+            this.locale = locale;
+            bind(amount, ccy);
+        }
+
+        @Override
+        protected String computeValue() {
+            Currency currency = ccy.get();
+            double value = amount.get();
+            long bits = Double.doubleToRawLongBits(value);
+            if (currency == lastCurrency) {
+                if (bits == lastBits) {
+                    return last;
+                }
+            } else {
+                lastCurrency = currency;
+                moneyFormat = MoneyFormat.get(format, currency, locale);
+            }
+            lastBits = bits;
+            last = moneyFormat.format(value, last);
+            return last;
+        }
+    }
+
+    private static final class Key {
+        private final String format;
+        private final Currency ccy;
+        private final Locale locale;
+
+        private Key(String format, Currency ccy, Locale locale) {
+            this.format = format;
+            this.ccy = ccy;
+            this.locale = locale;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return format.equals(key.format) && ccy.equals(key.ccy) && locale.equals(key.locale);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(format, ccy, locale);
+        }
+    }
+}
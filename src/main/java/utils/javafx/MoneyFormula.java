@@ -0,0 +1,223 @@
+package utils.javafx;
+
+import javafx.beans.Observable;
+import javafx.beans.binding.DoubleBinding;
+import javafx.beans.binding.DoubleExpression;
+import javafx.beans.binding.ObjectExpression;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Currency;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A lazily composed {@link Money} computation. Where every {@link Money#add}, {@link Money#multiply},
+ * {@link Money#convert}... wraps the previous expression in a new binding (a P&amp;L like
+ * {@code price * qty, converted, minus cost} being a chain of 5 or 6 bindings per row), a formula only records the
+ * operations, and {@link #compile()} turns the whole tree into a single binding: it depends directly on the leaf
+ * amounts, multipliers and (shared) rates, and evaluates in one pass over a flat postfix program.
+ * <p>
+ * Formulas are immutable and can be shared between rows, e.g. as the common cost part of many P&amp;Ls.
+ */
+public final class MoneyFormula {
+
+    private static final int OPERAND = 0;
+    private static final int CONSTANT = 1;
+    private static final int ADD = 2;
+    private static final int SUBTRACT = 3;
+    private static final int MULTIPLY = 4;
+    private static final int DIVIDE = 5;
+
+    private final int op;
+    private final MoneyFormula left;
+    private final MoneyFormula right;
+    private final DoubleExpression operand;
+    private final double constant;
+    private final ObjectExpression<Currency> ccy;
+    private final int depth;
+
+    private MoneyFormula(int op, MoneyFormula left, MoneyFormula right, DoubleExpression operand, double constant, ObjectExpression<Currency> ccy) {
+        this.op = op;
+        this.left = left;
+        this.right = right;
+        this.operand = operand;
+        this.constant = constant;
+        this.ccy = ccy;
+        this.depth = left == null ? 1 : Math.max(left.depth, right.depth + 1);
+    }
+
+    private static MoneyFormula leaf(DoubleExpression operand, ObjectExpression<Currency> ccy) {
+        return new MoneyFormula(OPERAND, null, null, operand, 0., ccy);
+    }
+
+    private static MoneyFormula scalar(double constant) {
+        return new MoneyFormula(CONSTANT, null, null, null, constant, null);
+    }
+
+    private MoneyFormula apply(int op, MoneyFormula right, ObjectExpression<Currency> ccy) {
+        return new MoneyFormula(op, this, right, null, 0., ccy);
+    }
+
+    public static MoneyFormula of(Money money) {
+        return leaf(money.amountProperty(), money.currencyProperty());
+    }
+
+    /**
+     * @return a formula in the same currency expression as {@code new Money(amount, ccy)}, so that it can be combined
+     * with the amounts and formulas created with that fixed currency
+     */
+    public static MoneyFormula of(DoubleExpression amount, Currency ccy) {
+        return leaf(amount, Money.fixedCurrency(ccy));
+    }
+
+    public static MoneyFormula of(DoubleExpression amount, ObjectExpression<Currency> ccy) {
+        return leaf(amount, ccy);
+    }
+
+    public MoneyFormula add(MoneyFormula add) {
+        checkCurrency(add, "add", "to");
+        return apply(ADD, add, ccy);
+    }
+
+    public MoneyFormula add(Money add) {
+        return add(of(add));
+    }
+
+    public MoneyFormula subtract(MoneyFormula subtract) {
+        checkCurrency(subtract, "subtract", "from");
+        return apply(SUBTRACT, subtract, ccy);
+    }
+
+    public MoneyFormula subtract(Money subtract) {
+        return subtract(of(subtract));
+    }
+
+    public MoneyFormula multiply(DoubleExpression mul) {
+        return apply(MULTIPLY, leaf(mul, null), ccy);
+    }
+
+    public MoneyFormula multiply(double mul) {
+        return apply(MULTIPLY, scalar(mul), ccy);
+    }
+
+    public MoneyFormula divide(DoubleExpression div) {
+        return apply(DIVIDE, leaf(div, null), ccy);
+    }
+
+    public MoneyFormula convert(Currency ccy) {
+        ObjectExpression<Currency> to = Money.fixedCurrency(ccy);
+        if (to.equals(this.ccy)) {
+            return this;
+        }
+        // the same rate binding as Money.inCurrency(Currency)
+        return apply(MULTIPLY, leaf(RateBindings.get(this.ccy, ccy), null), to);
+    }
+
+    public MoneyFormula convert(ObjectExpression<Currency> ccy) {
+        if (ccy.equals(this.ccy)) {
+            return this;
+        }
+        return apply(MULTIPLY, leaf(RateBindings.get(this.ccy, ccy), null), ccy);
+    }
+
+    private void checkCurrency(MoneyFormula other, String operation, String preposition) {
+        if (!ccy.equals(other.ccy)) {
+            throw new IllegalArgumentException("Cannot " + operation + " money in ccy " + other.ccy.get().getCurrencyCode() + " " + preposition + " amount in " + ccy.get().getCurrencyCode());
+        }
+    }
+
+    public Money compile() {
+        return new Money(new CompiledFormula(this), ccy);
+    }
+
+    /**
+     * The formula as a postfix program: {@code ops} and {@code args} side by side, the operands of each operation being
+     * on top of the stack when it runs.
+     */
+    private static final class CompiledFormula extends DoubleBinding {
+        private final int[] ops;
+        private final int[] args;
+        private final DoubleExpression[] operands;
+        private final double[] constants;
+        private final double[] stack;
+
+        private CompiledFormula(MoneyFormula formula) {
+            List<Integer> ops = new ArrayList<>();
+            List<Integer> args = new ArrayList<>();
+            Map<DoubleExpression, Integer> operands = new IdentityHashMap<>();
+            List<Double> constants = new ArrayList<>();
+            emit(formula, ops, args, operands, constants);
+
+            this.ops = ops.stream().mapToInt(Integer::intValue).toArray();
+            this.args = args.stream().mapToInt(Integer::intValue).toArray();
+            this.operands = new DoubleExpression[operands.size()];
+            operands.forEach((operand, i) -> this.operands[i] = operand);
+            this.constants = constants.stream().mapToDouble(Double::doubleValue).toArray();
+            this.stack = new double[formula.depth];
+            bind((Observable[]) this.operands);
+        }
+
+        private static void emit(MoneyFormula formula, List<Integer> ops, List<Integer> args, Map<DoubleExpression, Integer> operands, List<Double> constants) {
+            switch (formula.op) {
+                case OPERAND:
+                    ops.add(OPERAND);
+                    args.add(operands.computeIfAbsent(formula.operand, o -> operands.size()));
+                    break;
+                case CONSTANT:
+                    ops.add(CONSTANT);
+                    args.add(constants.size());
+                    constants.add(formula.constant);
+                    break;
+                default:
+                    emit(formula.left, ops, args, operands, constants);
+                    emit(formula.right, ops, args, operands, constants);
+                    ops.add(formula.op);
+                    args.add(0);
+            }
+        }
+
+        @Override
+        public ObservableList<?> getDependencies() {
+            return FXCollections.unmodifiableObservableList(FXCollections.observableArrayList(Arrays.asList(operands)));
+        }
+
+        @Override
+        public void dispose() {
+            unbind((Observable[]) operands);
+        }
+
+        @Override
+        protected double computeValue() {
+            int top = -1;
+            for (int i = 0; i < ops.length; i++) {
+                switch (ops[i]) {
+                    case OPERAND:
+                        stack[++top] = operands[args[i]].get();
+                        break;
+                    case CONSTANT:
+                        stack[++top] = constants[args[i]];
+                        break;
+                    case ADD:
+                        stack[top - 1] += stack[top--];
+                        break;
+                    case SUBTRACT:
+                        stack[top - 1] -= stack[top--];
+                        break;
+                    case MULTIPLY:
+                        stack[top - 1] *= stack[top--];
+                        break;
+                    case DIVIDE:
+                        stack[top - 1] /= stack[top--];
+                        break;
+                    default:
+                        throw new IllegalStateException("Unknown operation " + ops[i]);
+                }
+            }
+            return stack[0];
+        }
+    }
+}
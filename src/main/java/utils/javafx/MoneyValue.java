@@ -0,0 +1,175 @@
+package utils.javafx;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.Currency;
+
+/**
+ * An immutable amount of money, for the static amounts (historical fills, reference data...) that do not need to be
+ * observed: a {@code long} number of minor units (e.g. cents) and the {@link CurrencyIndex} ordinal of the currency,
+ * instead of the properties or bindings held by every {@link Money}.
+ * <p>
+ * The arithmetic is exact in minor units: it does not allocate anything but its result, and throws an
+ * {@code ArithmeticException} on overflow. Conversions from a {@code double} round half-up on its shortest decimal
+ * representation, like {@code String.format("%.2f")} does.
+ */
+public final class MoneyValue implements Comparable<MoneyValue> {
+
+    private static final long[] POWERS_OF_TEN = {1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L};
+
+    private final long minorUnits;
+    private final int currency;
+
+    private MoneyValue(long minorUnits, int currency) {
+        this.minorUnits = minorUnits;
+        this.currency = currency;
+    }
+
+    /**
+     * @param minorUnits the amount in the smallest unit of the currency, e.g. 1234 for 12.34 EUR
+     */
+    public static MoneyValue ofMinor(long minorUnits, Currency ccy) {
+        return new MoneyValue(minorUnits, CurrencyIndex.ordinal(ccy));
+    }
+
+    /**
+     * @param amount the amount, rounded to the minor unit of the currency
+     */
+    public static MoneyValue of(double amount, Currency ccy) {
+        int ordinal = CurrencyIndex.ordinal(ccy);
+        return new MoneyValue(toMinor(amount, ordinal), ordinal);
+    }
+
+    /**
+     * @return the current value of an observable amount
+     */
+    public static MoneyValue of(Money money) {
+        return of(money.getAmount().doubleValue(), money.currencyProperty().get());
+    }
+
+    private static long scale(int ordinal) {
+        return POWERS_OF_TEN[CurrencyIndex.fractionDigits(ordinal)];
+    }
+
+    private static long toMinor(double amount, int ordinal) {
+        if (Double.isNaN(amount) || Double.isInfinite(amount)) {
+            throw new IllegalArgumentException("Cannot convert " + amount + " to an amount of money");
+        }
+        double scaled = amount * scale(ordinal);
+        double distanceToTie = Math.abs(Math.abs(scaled - Math.floor(scaled)) - .5);
+        if (Math.abs(scaled) < 1e15 && distanceToTie > 4 * Math.ulp(scaled)) {
+            // far enough from a tie for the rounding errors of the multiplication not to matter
+            return Math.round(scaled);
+        }
+        return BigDecimal.valueOf(amount).setScale(CurrencyIndex.fractionDigits(ordinal), RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    public long getMinorUnits() {
+        return minorUnits;
+    }
+
+    public Currency getCurrency() {
+        return CurrencyIndex.currency(currency);
+    }
+
+    public int getCurrencyOrdinal() {
+        return currency;
+    }
+
+    public double getAmount() {
+        return (double) minorUnits / scale(currency);
+    }
+
+    /**
+     * @return an observable {@link Money} with a constant amount equal to this value
+     */
+    public Money toMoney() {
+        return new Money(getAmount(), getCurrency());
+    }
+
+    public MoneyValue add(MoneyValue add) {
+        checkCurrency(add, "add");
+        return new MoneyValue(Math.addExact(minorUnits, add.minorUnits), currency);
+    }
+
+    public MoneyValue subtract(MoneyValue subtract) {
+        checkCurrency(subtract, "subtract");
+        return new MoneyValue(Math.subtractExact(minorUnits, subtract.minorUnits), currency);
+    }
+
+    public MoneyValue negate() {
+        return new MoneyValue(Math.negateExact(minorUnits), currency);
+    }
+
+    public MoneyValue multiply(long mul) {
+        return new MoneyValue(Math.multiplyExact(minorUnits, mul), currency);
+    }
+
+    /**
+     * @return this amount multiplied by {@code mul}, rounded to the minor unit
+     */
+    public MoneyValue multiply(double mul) {
+        return new MoneyValue(toMinor(getAmount() * mul, currency), currency);
+    }
+
+    /**
+     * @return this amount in another currency, at the rate of the current {@link Money#getRateProvider() provider}
+     */
+    public MoneyValue convert(Currency ccy) {
+        int to = CurrencyIndex.ordinal(ccy);
+        if (to == currency) {
+            return this;
+        }
+        return new MoneyValue(toMinor(getAmount() * Money.getRateProvider().getRate(currency, to), to), to);
+    }
+
+    /**
+     * @return this amount in another currency, at the rate of a past date, see {@link Money#getHistoricalRates()}
+     */
+    public MoneyValue convert(Currency ccy, LocalDate date) {
+        int to = CurrencyIndex.ordinal(ccy);
+        if (to == currency) {
+            return this;
+        }
+        return new MoneyValue(toMinor(getAmount() * Money.getHistoricalRates().getRate(currency, to, Math.toIntExact(date.toEpochDay())), to), to);
+    }
+
+    public int signum() {
+        return Long.signum(minorUnits);
+    }
+
+    private void checkCurrency(MoneyValue other, String operation) {
+        if (other.currency != currency) {
+            throw new IllegalArgumentException("Cannot " + operation + " money in ccy " + other.getCurrency().getCurrencyCode() + " and amount in " + getCurrency().getCurrencyCode());
+        }
+    }
+
+    @Override
+    public int compareTo(MoneyValue o) {
+        checkCurrency(o, "compare");
+        return Long.compare(minorUnits, o.minorUnits);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof MoneyValue)) {
+            return false;
+        }
+        MoneyValue that = (MoneyValue) o;
+        return minorUnits == that.minorUnits && currency == that.currency;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(minorUnits) + currency;
+    }
+
+    @Override
+    public String toString() {
+        return BigDecimal.valueOf(minorUnits, CurrencyIndex.fractionDigits(currency)).toPlainString() + " " + getCurrency().getCurrencyCode();
+    }
+}
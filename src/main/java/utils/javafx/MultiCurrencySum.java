@@ -0,0 +1,124 @@
+package utils.javafx;
+
+import javafx.beans.binding.Bindings;
+import javafx.beans.binding.DoubleExpression;
+import javafx.beans.binding.NumberExpression;
+import javafx.beans.binding.ObjectExpression;
+import javafx.collections.ObservableList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Currency;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Sum of amounts in various currencies, converted to one target currency. Unlike
+ * {@link Money#sum(ObservableList, Function, ObjectExpression)}, which converts every amount before summing, the
+ * amounts are summed per currency first and each subtotal is converted once: the sum only depends on one (shared) rate
+ * binding per currency present in the list, and a change of the target currency or of a rate costs O(#currencies)
+ * instead of O(N).
+ * <p>
+ * Each item contributes its amount and the {@link CurrencyIndex} ordinal of its currency: an item whose currency
+ * changes is moved from one subtotal to the other.
+ *
+ * @param <E> item class
+ */
+public class MultiCurrencySum<E> extends AggregateBinding<E> {
+
+    private final Function<Currency, DoubleExpression> rateToTarget;
+    private final Summation summation;
+    private Bucket[] buckets = new Bucket[0];
+    private final List<Bucket> activeBuckets = new ArrayList<>();
+    private final RunningSum total;
+
+    public MultiCurrencySum(ObservableList<E> items, Function<E, Money> extractor, Currency ccy, Summation summation) {
+        this(items, extractor, from -> Money.getRate(from, ccy), summation);
+    }
+
+    public MultiCurrencySum(ObservableList<E> items, Function<E, Money> extractor, ObjectExpression<Currency> ccy, Summation summation) {
+        this(items, extractor, from -> Money.getRate(from, ccy), summation);
+    }
+
+    private MultiCurrencySum(ObservableList<E> items, Function<E, Money> extractor, Function<Currency, DoubleExpression> rateToTarget, Summation summation) {
+        super(items, true, Arrays.asList(
+                o -> extractor.apply(o).amountProperty(),
+                o -> currencyOrdinal(extractor.apply(o).currencyProperty())));
+        this.rateToTarget = rateToTarget;
+        this.summation = summation;
+        this.total = new RunningSum(summation);
+    }
+
+    private static NumberExpression currencyOrdinal(ObjectExpression<Currency> ccy) {
+        return Bindings.createIntegerBinding(() -> CurrencyIndex.ordinal(ccy.get()), ccy);
+    }
+
+    /**
+     * @return the number of currencies the amounts are currently in, i.e. the number of conversions per evaluation
+     */
+    public int getCurrencyCount() {
+        return activeBuckets.size();
+    }
+
+    @Override
+    protected void clear() {
+        activeBuckets.forEach(bucket -> {
+            unbind(bucket.rate);
+            buckets[bucket.ordinal] = null;
+        });
+        activeBuckets.clear();
+    }
+
+    @Override
+    protected void include(Item item) {
+        int ordinal = (int) item.value(1);
+        if (ordinal >= buckets.length) {
+            buckets = Arrays.copyOf(buckets, Math.max(ordinal + 1, 2 * buckets.length));
+        }
+        Bucket bucket = buckets[ordinal];
+        if (bucket == null) {
+            bucket = new Bucket(ordinal, rateToTarget.apply(CurrencyIndex.currency(ordinal)), summation);
+            buckets[ordinal] = bucket;
+            activeBuckets.add(bucket);
+            bind(bucket.rate);
+        }
+        bucket.amounts.add(item.value(0));
+        bucket.count++;
+    }
+
+    @Override
+    protected void exclude(Item item) {
+        Bucket bucket = buckets[(int) item.value(1)];
+        bucket.amounts.remove(item.value(0));
+        if (--bucket.count == 0) {
+            unbind(bucket.rate);
+            buckets[bucket.ordinal] = null;
+            activeBuckets.remove(bucket);
+        }
+    }
+
+    @Override
+    protected double aggregate() {
+        total.reset();
+        for (Bucket bucket : activeBuckets) {
+            total.add(bucket.amounts.get() * bucket.rate.get());
+        }
+        return total.get();
+    }
+
+    /**
+     * Subtotal of the amounts in one currency.
+     */
+    private static final class Bucket {
+        private final int ordinal;
+        private final DoubleExpression rate;
+        private final RunningSum amounts;
+        private int count = 0;
+
+        private Bucket(int ordinal, DoubleExpression rate, Summation summation) {
+            this.ordinal = ordinal;
+            this.rate = rate;
+            this.amounts = new RunningSum(summation);
+        }
+    }
+}
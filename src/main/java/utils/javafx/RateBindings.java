@@ -0,0 +1,190 @@
+package utils.javafx;
+
+import javafx.beans.binding.DoubleBinding;
+import javafx.beans.binding.ObjectExpression;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiPredicate;
+
+/**
+ * The rate bindings returned by {@link Money#getRate}, interned by pair of currencies: all the amounts converted from
+ * and to the same currencies share a single binding, instead of holding one each.
+ * <p>
+ * Each side of a pair is either a {@code Currency} or an {@code ObjectExpression<Currency>}, both compared by identity
+ * ({@code Currency} instances are unique per currency code). The bindings are only weakly held: a pair nobody converts
+ * any more is collected, and dropped from the cache the next time it is accessed.
+ */
+final class RateBindings {
+
+    private static final Map<Key, Entry> bindings = new HashMap<>();
+    private static final ReferenceQueue<RateBinding> collected = new ReferenceQueue<>();
+
+    private RateBindings() {
+    }
+
+    static DoubleBinding get(Currency from, Currency to) {
+        return intern(from, to);
+    }
+
+    static DoubleBinding get(ObjectExpression<Currency> from, ObjectExpression<Currency> to) {
+        return intern(from, to);
+    }
+
+    static DoubleBinding get(Currency from, ObjectExpression<Currency> to) {
+        return intern(from, to);
+    }
+
+    static DoubleBinding get(ObjectExpression<Currency> from, Currency to) {
+        return intern(from, to);
+    }
+
+    /**
+     * Invalidates every live rate binding, e.g. when the rate provider has been replaced.
+     */
+    static void invalidateAll() {
+        live().forEach(DoubleBinding::invalidate);
+    }
+
+    /**
+     * Invalidates the live rate bindings whose pair, with the currencies it currently resolves to, has changed.
+     * @return the number of bindings actually invalidated, i.e. that were valid: the ones nobody has evaluated since
+     * their last invalidation (among which the bindings no longer used, but not collected yet) are left alone
+     */
+    static int invalidate(BiPredicate<Currency, Currency> changed) {
+        int invalidated = 0;
+        for (RateBinding binding : live()) {
+            if (affected(binding, changed)) {
+                binding.invalidate();
+                invalidated++;
+            }
+        }
+        return invalidated;
+    }
+
+    /**
+     * @return the number of bindings {@link #invalidate(BiPredicate)} would invalidate now, without invalidating them
+     */
+    static int count(BiPredicate<Currency, Currency> changed) {
+        int affected = 0;
+        for (RateBinding binding : live()) {
+            if (affected(binding, changed)) {
+                affected++;
+            }
+        }
+        return affected;
+    }
+
+    /**
+     * @return the number of pairs currently cached
+     */
+    static synchronized int size() {
+        purge();
+        return bindings.size();
+    }
+
+    private static synchronized List<RateBinding> live() {
+        purge();
+        List<RateBinding> live = new ArrayList<>(bindings.size());
+        for (Entry entry : bindings.values()) {
+            RateBinding binding = entry.get();
+            if (binding != null) {
+                live.add(binding);
+            }
+        }
+        return live;
+    }
+
+    private static synchronized DoubleBinding intern(Object from, Object to) {
+        purge();
+        Key key = new Key(from, to);
+        Entry entry = bindings.get(key);
+        RateBinding binding = entry == null ? null : entry.get();
+        if (binding == null) {
+            binding = new RateBinding(from, to);
+            bindings.put(key, new Entry(key, binding));
+        }
+        return binding;
+    }
+
+    private static void purge() {
+        Entry entry;
+        while ((entry = (Entry) collected.poll()) != null) {
+            // the pair may have been interned again since, with a new binding
+            bindings.remove(entry.key, entry);
+        }
+    }
+
+    private static boolean affected(RateBinding binding, BiPredicate<Currency, Currency> changed) {
+        if (!binding.isValid()) {
+            return false;
+        }
+        Currency from = currency(binding.from);
+        Currency to = currency(binding.to);
+        return !from.equals(to) && changed.test(from, to);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Currency currency(Object side) {
+        return side instanceof Currency ? (Currency) side : ((ObjectExpression<Currency>) side).get();
+    }
+
+    private static final class RateBinding extends DoubleBinding {
+        private final Object from;
+        private final Object to;
+
+        private RateBinding(Object from, Object to) {
+            this.from = from;
+            this.to = to;
+            if (from instanceof ObjectExpression) {
+                bind((ObjectExpression<?>) from);
+            }
+            if (to instanceof ObjectExpression) {
+                bind((ObjectExpression<?>) to);
+            }
+        }
+
+        @Override
+        protected double computeValue() {
+            return Money.getFixedRate(currency(from), currency(to));
+        }
+    }
+
+    private static final class Key {
+        private final Object from;
+        private final Object to;
+
+        private Key(Object from, Object to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return from == key.from && to == key.to;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(from) + System.identityHashCode(to);
+        }
+    }
+
+    private static final class Entry extends WeakReference<RateBinding> {
+        private final Key key;
+
+        private Entry(Key key, RateBinding binding) {
+            super(binding, collected);
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package utils.javafx;
+
+/**
+ * A sum of doubles that values can be taken out of as well as put into. {@code NaN}s and infinities are only counted,
+ * not added, so that removing them brings the total back to a finite value instead of poisoning it forever.
+ */
+final class RunningSum {
+
+    private final Summation summation;
+    private double sum;
+    private double compensation;
+    private int nanCount;
+    private int positiveInfinityCount;
+    private int negativeInfinityCount;
+
+    RunningSum() {
+        this(Summation.PLAIN);
+    }
+
+    RunningSum(Summation summation) {
+        this.summation = summation;
+    }
+
+    Summation getSummation() {
+        return summation;
+    }
+
+    void add(double value) {
+        if (Double.isNaN(value)) {
+            nanCount++;
+        } else if (value == Double.POSITIVE_INFINITY) {
+            positiveInfinityCount++;
+        } else if (value == Double.NEGATIVE_INFINITY) {
+            negativeInfinityCount++;
+        } else {
+            addFinite(value);
+        }
+    }
+
+    void remove(double value) {
+        if (Double.isNaN(value)) {
+            nanCount--;
+        } else if (value == Double.POSITIVE_INFINITY) {
+            positiveInfinityCount--;
+        } else if (value == Double.NEGATIVE_INFINITY) {
+            negativeInfinityCount--;
+        } else {
+            addFinite(-value);
+        }
+    }
+
+    private void addFinite(double value) {
+        if (summation == Summation.COMPENSATED) {
+            double t = sum + value;
+            if (Math.abs(sum) >= Math.abs(value)) {
+                compensation += (sum - t) + value;
+            } else {
+                compensation += (value - t) + sum;
+            }
+            sum = t;
+        } else {
+            sum += value;
+        }
+    }
+
+    void replace(double oldValue, double newValue) {
+        remove(oldValue);
+        add(newValue);
+    }
+
+    void reset() {
+        sum = 0.;
+        compensation = 0.;
+        nanCount = 0;
+        positiveInfinityCount = 0;
+        negativeInfinityCount = 0;
+    }
+
+    /**
+     * @return the sum of the finite values only
+     */
+    double finiteSum() {
+        return sum + compensation;
+    }
+
+    /**
+     * @return the total, following the IEEE rules: {@code NaN} if any value is {@code NaN} or if both infinities are
+     * present, an infinity if only that one is present, the finite sum otherwise
+     */
+    double get() {
+        if (nanCount > 0 || (positiveInfinityCount > 0 && negativeInfinityCount > 0)) {
+            return Double.NaN;
+        } else if (positiveInfinityCount > 0) {
+            return Double.POSITIVE_INFINITY;
+        } else if (negativeInfinityCount > 0) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        return finiteSum();
+    }
+}
@@ -1,36 +1,56 @@
 package utils.javafx;
 
 import com.google.common.base.Strings;
-import com.google.common.collect.Sets;
+import com.google.common.collect.Lists;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
-import javafx.collections.ObservableMap;
-import javafx.collections.transformation.FilteredList;
 import javafx.geometry.Point2D;
 import javafx.scene.control.Label;
 import javafx.scene.control.ListCell;
 import javafx.scene.control.ListView;
 import javafx.scene.control.TextField;
 import javafx.scene.input.KeyCode;
+import javafx.scene.text.Text;
 import javafx.scene.text.TextFlow;
 import javafx.stage.Popup;
 import javafx.stage.PopupWindow;
 import javafx.util.Callback;
+import javafx.util.Duration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 
 /**
  * A helper class that allows to bind a {@code {@link TextField}} to a collection of beans, to perform a 'search-as-you-type'
- * in this collection among all the fields of the bean. Relies on a JSON representation of the bean.
+ * in this collection among all the fields of the bean. The fields are read with {@link FieldExtractor}s, or from a JSON
+ * representation of the bean by default, and their values are kept in a {@link SearchIndex} so that a keystroke only
+ * costs about the number of matches.
  *
  * Created by denis.kubasov on 06/05/2016.
  */
@@ -40,39 +60,661 @@ public class SearchBox {
     private final static Gson gson = new GsonBuilder().serializeSpecialFloatingPointValues().create();
 
     /**
-     * The matching function of the search, called on a text (json value) and a pattern (the {@code TextField} contents)
-     * @return true if the {@code text} matches the {@code pattern}
+     * The searchable fields of a bean: the primitive values of its JSON representation, by dotted path (e.g.
+     * {@code legs[0].ccy}), nested objects and arrays included.
      */
-    private static boolean match(String pattern, String text) {
-        return text.toLowerCase().contains(pattern.toLowerCase());
+    static Map<String, String> jsonFields(JsonElement json) {
+        Map<String, String> fields = new LinkedHashMap<>();
+        flatten("", json, fields);
+        return fields;
     }
 
     /**
-     * The corner-stone of the search, populating a set of fields of the bean that match the given search pattern.
-     * @param json JSON representation of a bean
-     * @param matched a set of matching fields (to be populated), will be empty if none matched
-     * @param value search pattern
-     * @return true if any field matches
+     * @return what the selection callback gets along with the bean: its JSON representation, or with field extractors,
+     * an object of the extracted fields, by name
      */
-    private static boolean jsonFindValue(JsonElement json, Set<Map.Entry<String, JsonElement>> matched, String value) {
-        matched.clear();
-        if(json.isJsonObject()) {
-            json.getAsJsonObject().entrySet().forEach(stringJsonElementEntry -> {
-                if(match(value, stringJsonElementEntry.getValue().getAsString())) {
-                    matched.add(stringJsonElementEntry);
+    static <T> JsonElement selectionJson(T bean, List<FieldExtractor<T>> fields) {
+        if (fields.isEmpty()) {
+            return gson.toJsonTree(bean);
+        }
+        JsonObject json = new JsonObject();
+        for (FieldExtractor<T> field : fields) {
+            String value = field.extract(bean);
+            json.add(field.getName(), value == null ? JsonNull.INSTANCE : new JsonPrimitive(value));
+        }
+        return json;
+    }
+
+    private static void flatten(String path, JsonElement json, Map<String, String> fields) {
+        if (json.isJsonObject()) {
+            json.getAsJsonObject().entrySet().forEach(entry -> flatten(path.isEmpty() ? entry.getKey() : path + "." + entry.getKey(), entry.getValue(), fields));
+        } else if (json.isJsonArray()) {
+            JsonArray array = json.getAsJsonArray();
+            for (int i = 0; i < array.size(); i++) {
+                flatten(path + "[" + i + "]", array.get(i), fields);
+            }
+        } else if (json.isJsonPrimitive()) {
+            fields.put(path, json.getAsString());
+        }
+    }
+
+    private static class MatchedItem {
+        private final List<MatchedField> matchedFields = Lists.newArrayList();
+        private int score;
+        // the text the fields are still to be matched against, null once they have been
+        private String text;
+    }
+
+    /**
+     * A matched field, already split around the first match of one of the patterns, so that a cell only has to set
+     * texts.
+     */
+    private static class MatchedField {
+        private final String label;
+        private final String before;
+        private final String match;
+        private final String after;
+
+        private MatchedField(String name, String value, List<String> patterns) {
+            int start = -1;
+            int end = 0;
+            for (String pattern : patterns) {
+                int index = pattern.isEmpty() ? -1 : indexOfIgnoreCase(value, pattern);
+                if (index >= 0 && (start < 0 || index < start)) {
+                    start = index;
+                    end = index + pattern.length();
+                }
+            }
+            this.label = " " + name + ": ";
+            this.before = start < 0 ? value : value.substring(0, start);
+            this.match = start < 0 ? "" : value.substring(start, end);
+            this.after = start < 0 ? "" : value.substring(end);
+        }
+    }
+
+    private static int indexOfIgnoreCase(String value, String pattern) {
+        for (int i = 0; i + pattern.length() <= value.length(); i++) {
+            if (value.regionMatches(true, i, pattern, 0, pattern.length())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * A result cell that builds its nodes once and only updates their texts afterwards: a label for the name of the
+     * bean, then for each matched field its name and its value, the matched part highlighted. The nodes of the fields
+     * are only ever added, those not needed by the current item are hidden.
+     */
+    private static class ResultCell<T> extends ListCell<T> {
+        private final Callback<T, String> name;
+        private final Search<T> search;
+        private final Label nameLabel = new Label();
+        private final TextFlow flow = new TextFlow(nameLabel);
+        private final List<FieldNodes> fields = new ArrayList<>();
+
+        private ResultCell(Callback<T, String> name, Search<T> search) {
+            this.name = name;
+            this.search = search;
+            nameLabel.setMaxWidth(USE_PREF_SIZE);
+            nameLabel.setPrefWidth(150);
+            nameLabel.setEllipsisString("...");
+        }
+
+        @Override
+        protected void updateItem(T item, boolean empty) {
+            super.updateItem(item, empty);
+            if(!empty && item  != null) {
+                nameLabel.setText(name.call(item));
+                List<MatchedField> matchedFields = search.matchedFields(item);
+                while (fields.size() < matchedFields.size()) {
+                    fields.add(new FieldNodes(flow));
+                }
+                for (int i = 0; i < fields.size(); i++) {
+                    fields.get(i).show(i < matchedFields.size() ? matchedFields.get(i) : null);
+                }
+                setGraphic(flow);
+            } else {
+                setGraphic(null);
+            }
+        }
+    }
+
+    private static class FieldNodes {
+        private final Text label = new Text();
+        private final Text before = new Text();
+        private final Text match = new Text();
+        private final Text after = new Text();
+
+        private FieldNodes(TextFlow flow) {
+            label.setStyle("-fx-font-weight:bold;");
+            match.setStyle("-fx-font-weight:bold; -fx-fill:#d35400;");
+            flow.getChildren().addAll(label, before, match, after);
+        }
+
+        /**
+         * @param field the field to show, or null to hide the nodes
+         */
+        private void show(MatchedField field) {
+            boolean shown = field != null;
+            label.setVisible(shown);
+            label.setManaged(shown);
+            before.setVisible(shown);
+            before.setManaged(shown);
+            match.setVisible(shown);
+            match.setManaged(shown);
+            after.setVisible(shown);
+            after.setManaged(shown);
+            if (field != null) {
+                label.setText(field.label);
+                before.setText(field.before);
+                match.setText(field.match);
+                after.setText(field.after);
+            }
+        }
+    }
+
+    /**
+     * Tuning of a search box. The defaults give the plain synchronous behaviour, on the JSON representation of the beans.
+     *
+     * @param <T> bean class
+     */
+    public static class Options<T> {
+        private ScheduledExecutorService executor = null;
+        private Duration debounce = Duration.ZERO;
+        private List<FieldExtractor<T>> fields = Collections.emptyList();
+        private int limit = Integer.MAX_VALUE;
+        private String nameField = null;
+        private int maxEdits = 0;
+        private boolean queryLanguage = false;
+        private Consumer<Runnable> updateScheduler = Platform::runLater;
+
+        /**
+         * @param fields the searchable fields of the beans, read directly from them. If empty (the default), the
+         *               fields are the primitive values of the JSON representation of the beans, nested objects and
+         *               arrays flattened by dotted path (e.g. {@code legs[0].ccy}), which is much slower to build
+         */
+        public Options<T> setFields(List<FieldExtractor<T>> fields) {
+            this.fields = fields;
+            return this;
+        }
+
+        public List<FieldExtractor<T>> getFields() {
+            return fields;
+        }
+
+        /**
+         * @param limit the maximum number of results to show, the best ones first (see
+         *              {@link SearchIndex#search(String, int)}). {@code Integer.MAX_VALUE} (the default) to show all of
+         *              them, in the order of the items
+         */
+        public Options<T> setLimit(int limit) {
+            if (limit <= 0) {
+                throw new IllegalArgumentException("Limit must be positive: " + limit);
+            }
+            this.limit = limit;
+            return this;
+        }
+
+        public int getLimit() {
+            return limit;
+        }
+
+        /**
+         * @param nameField the field whose matches rank above the others', see {@link SearchIndex#setNameField(String)}
+         */
+        public Options<T> setNameField(String nameField) {
+            this.nameField = nameField;
+            return this;
+        }
+
+        public String getNameField() {
+            return nameField;
+        }
+
+        /**
+         * @param maxEdits the typos tolerated between the text and a field, see
+         *                 {@link SearchIndex#searchFuzzy(String, int, int)}. 0 (the default) for exact matching only
+         */
+        public Options<T> setMaxEdits(int maxEdits) {
+            this.maxEdits = maxEdits;
+            return this;
+        }
+
+        public int getMaxEdits() {
+            return maxEdits;
+        }
+
+        /**
+         * @param queryLanguage whether the text is parsed as a {@link SearchQuery} ({@code ccy:EUR -side:sell vod}),
+         *                      rather than searched as a whole (the default). The values are then also indexed per
+         *                      field, see {@link SearchIndex#setFieldPostings(boolean)}
+         */
+        public Options<T> setQueryLanguage(boolean queryLanguage) {
+            this.queryLanguage = queryLanguage;
+            return this;
+        }
+
+        public boolean isQueryLanguage() {
+            return queryLanguage;
+        }
+
+        /**
+         * @param updateScheduler called with the task applying the changes of the items to the shown results, when the
+         *                        first change of a batch comes in, and with the task publishing the results of a search
+         *                        run on the executor. Expected to run it later on the FX thread, by default with
+         *                        {@code Platform.runLater}, so once per pulse
+         */
+        public Options<T> setUpdateScheduler(Consumer<Runnable> updateScheduler) {
+            this.updateScheduler = updateScheduler;
+            return this;
+        }
+
+        public Consumer<Runnable> getUpdateScheduler() {
+            return updateScheduler;
+        }
+
+        /**
+         * @param executor the executor to run the searches on, off the FX thread, or null to search synchronously in
+         *                 the text listener (the default)
+         */
+        public Options<T> setExecutor(ScheduledExecutorService executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        public ScheduledExecutorService getExecutor() {
+            return executor;
+        }
+
+        /**
+         * @param debounce how long the text has to stay unchanged before it is searched, only used with an executor
+         */
+        public Options<T> setDebounce(Duration debounce) {
+            this.debounce = debounce;
+            return this;
+        }
+
+        public Duration getDebounce() {
+            return debounce;
+        }
+    }
+
+    /**
+     * Runs the searches of one search box, and publishes their results. With an executor, each new text cancels the
+     * search of the previous one, whether it is still waiting for its debounce delay or already running, and only the
+     * result of the latest text is ever published.
+     * <p>
+     * The items added or updated are indexed in a batch per scheduled update, however many times they have changed in
+     * between. While results are shown, they are then only tested against the shown text, and the results are patched
+     * in place (see {@link #retest(List)}). Only a ranked result set that was full and loses a bean, or sees one drop in
+     * the ranking, is searched again, to fill the gap.
+     */
+    static class Search<T> {
+        private final SearchIndex<T> index;
+        private final List<T> items;
+        private final ObservableList<T> results;
+        private final MatchState<T, MatchedItem> matched = new MatchState<>(MatchedItem::new);
+        private final Options<T> options;
+        private final AtomicLong generation = new AtomicLong();
+        private Future<?> pending = null;
+
+        private String typed = null;
+        private String shown = null;
+        private final Set<T> toIndex = new LinkedHashSet<>();
+        private final Set<T> toRetest = new LinkedHashSet<>();
+        private boolean updateScheduled = false;
+        private boolean searchAgain = false;
+
+        private String compiledText = null;
+        private SearchQuery compiledQuery = null;
+        private List<String> highlighted = null;
+        // the first position of every bean in the items, for the unranked results, rebuilt once they have moved
+        private Map<T, Integer> positions = null;
+
+        private Search(SearchIndex<T> index, List<T> items, ObservableList<T> results, Options<T> options) {
+            this.index = index;
+            this.items = items;
+            this.results = results;
+            this.options = options;
+        }
+
+        /**
+         * @return the query of a text, the same object for the same text in a row
+         */
+        private SearchQuery compile(String text) {
+            if (!text.equals(compiledText)) {
+                compiledText = text;
+                compiledQuery = (options.isQueryLanguage() ? SearchQuery.parse(text) : SearchQuery.of(text)).withMaxEdits(options.getMaxEdits());
+                highlighted = new ArrayList<>();
+                for (SearchQuery.Term term : compiledQuery.getTerms()) {
+                    if (!term.isNegated()) {
+                        highlighted.add(term.getValue());
+                    }
+                }
+            }
+            return compiledQuery;
+        }
+
+        private boolean isRanked() {
+            return options.getLimit() != Integer.MAX_VALUE;
+        }
+
+        /**
+         * Puts unranked results back in the order of the items, the index returning them in indexing order.
+         */
+        private void sortByPosition(List<T> beans) {
+            if (positions == null) {
+                positions = new IdentityHashMap<>(items.size());
+                for (int i = items.size() - 1; i >= 0; i--) {
+                    positions.put(items.get(i), i);
+                }
+            }
+            Map<T, Integer> current = positions;
+            beans.sort(Comparator.comparingInt(bean -> current.getOrDefault(bean, Integer.MAX_VALUE)));
+        }
+
+        /**
+         * Called when beans have been added to, removed from or moved in the items.
+         */
+        private void moved() {
+            positions = null;
+        }
+
+        /**
+         * Forgets a bean that has left the searched collection.
+         */
+        private void evict(T bean) {
+            toIndex.remove(bean);
+            toRetest.remove(bean);
+            if (matched.evict(bean)) {
+                if (isRanked() && results.size() >= options.getLimit()) {
+                    searchAgain = true;
+                    scheduleUpdate();
+                }
+                results.remove(bean);
+            }
+        }
+
+        /**
+         * Queues a bean that has been added or updated, to be indexed again and tested against the shown text.
+         */
+        private void changed(T bean) {
+            toIndex.add(bean);
+            scheduleUpdate();
+        }
+
+        private void scheduleUpdate() {
+            if (!updateScheduled) {
+                updateScheduled = true;
+                options.getUpdateScheduler().accept(this::update);
+            }
+        }
+
+        private void update() {
+            updateScheduled = false;
+            boolean searching = !Strings.isNullOrEmpty(typed);
+            toIndex.forEach(bean -> {
+                index.update(bean);
+                if (searching) {
+                    toRetest.add(bean);
                 }
             });
+            toIndex.clear();
+            if (shown == null || !shown.equals(typed)) {
+                // a search is running, the changes will be applied to its result once published
+                return;
+            }
+            List<T> beans = new ArrayList<>(toRetest);
+            toRetest.clear();
+            if (searchAgain || !retest(beans)) {
+                searchAgain = false;
+                query(shown);
+            }
+        }
+
+        /**
+         * Tests a batch of changed beans against the shown text, and patches the results with it: the beans that still
+         * match stay where they are and only get their cells refreshed, those that no longer match are removed, and
+         * the new matches are inserted, at the end or at their rank. The results are only rebuilt as a whole if the
+         * batch changes the ranking of the beans already shown.
+         *
+         * @return false if the results have to be searched again instead, a full ranked result set losing a bean or
+         * seeing one drop in the ranking
+         */
+        private boolean retest(List<T> beans) {
+            SearchQuery query = compile(shown);
+            boolean full = isRanked() && results.size() >= options.getLimit();
+            int[] scores = new int[beans.size()];
+            for (int i = 0; i < scores.length; i++) {
+                scores[i] = index.score(beans.get(i), query);
+                MatchedItem item = matched.get(beans.get(i));
+                if (full && item != null && scores[i] < item.score) {
+                    // a bean that is not shown may now rank better
+                    return false;
+                }
+            }
+            // a shown bean's score can only have gone up: what did not beat the last one still does not
+            int cut = full ? matched.get(results.get(results.size() - 1)).score : 0;
+            Set<T> leaving = identitySet();
+            Set<T> refreshed = identitySet();
+            List<T> entering = new ArrayList<>();
+            for (int i = 0; i < scores.length; i++) {
+                T bean = beans.get(i);
+                MatchedItem item = matched.get(bean);
+                if (item != null) {
+                    if (scores[i] == 0) {
+                        leaving.add(bean);
+                    } else {
+                        fill(item, bean, shown, scores[i]);
+                        refreshed.add(bean);
+                    }
+                } else if (scores[i] > cut) {
+                    // ties going to the earlier beans
+                    fill(matched.stamp(bean), bean, shown, scores[i]);
+                    entering.add(bean);
+                }
+            }
+            if (leaving.isEmpty() && entering.isEmpty() && refreshed.isEmpty()) {
+                return true;
+            }
+
+            Set<T> shownBeans = identitySet();
+            List<T> next = new ArrayList<>(results.size() + entering.size());
+            for (T bean : results) {
+                shownBeans.add(bean);
+                if (!leaving.contains(bean)) {
+                    next.add(bean);
+                }
+            }
+            next.addAll(entering);
+            if (!isRanked() && !entering.isEmpty()) {
+                sortByPosition(next);
+            } else if (isRanked()) {
+                // stable: the beans already shown stay before the new ones that rank the same
+                next.sort((a, b) -> Integer.compare(matched.get(b).score, matched.get(a).score));
+                while (next.size() > options.getLimit()) {
+                    matched.evict(next.remove(next.size() - 1));
+                }
+            }
+            leaving.forEach(matched::evict);
+
+            Set<T> removed = identitySet();
+            List<T> kept = new ArrayList<>(results.size());
+            Set<T> nextBeans = identitySet();
+            nextBeans.addAll(next);
+            for (T bean : results) {
+                if (nextBeans.contains(bean)) {
+                    kept.add(bean);
+                } else {
+                    removed.add(bean);
+                }
+            }
+            int k = 0;
+            for (T bean : next) {
+                if (shownBeans.contains(bean) && kept.get(k++) != bean) {
+                    // the ranking of the shown beans has changed
+                    results.setAll(next);
+                    return true;
+                }
+            }
+            if (!removed.isEmpty()) {
+                results.removeAll(removed);
+            }
+            for (int i = 0; i < next.size(); ) {
+                int end = i;
+                while (end < next.size() && !shownBeans.contains(next.get(end))) {
+                    end++;
+                }
+                if (end > i) {
+                    results.addAll(i, next.subList(i, end));
+                    i = end;
+                } else {
+                    i++;
+                }
+            }
+            if (!refreshed.isEmpty()) {
+                for (int i = 0; i < results.size(); i++) {
+                    T bean = results.get(i);
+                    if (refreshed.contains(bean)) {
+                        // same bean, new matched fields: the cell is updated in place
+                        results.set(i, bean);
+                    }
+                }
+            }
+            return true;
+        }
+
+        private static <T> Set<T> identitySet() {
+            return Collections.newSetFromMap(new IdentityHashMap<>());
+        }
+
+        /**
+         * Sets the score of a bean entering or staying in the results. Its matched fields are only split for
+         * highlighting when a cell shows it, see {@link #matchedFields(Object)}.
+         */
+        private void fill(MatchedItem item, T bean, String text, int score) {
+            item.score = score;
+            item.text = text;
+            item.matchedFields.clear();
+        }
+
+        /**
+         * @return the fields of a shown bean matching the text it was found with, empty if it is not shown
+         */
+        private List<MatchedField> matchedFields(T bean) {
+            MatchedItem item = matched.get(bean);
+            if (item == null) {
+                return Collections.emptyList();
+            }
+            if (item.text != null) {
+                SearchQuery query = compile(item.text);
+                index.matchedFields(bean, query).forEach(field -> item.matchedFields.add(new MatchedField(field.getKey(), field.getValue(), highlighted)));
+                item.text = null;
+            }
+            return item.matchedFields;
+        }
+
+        void query(String text) {
+            long current = generation.incrementAndGet();
+            typed = text;
+            if (pending != null) {
+                pending.cancel(false);
+                pending = null;
+            }
+            if(Strings.isNullOrEmpty(text)) {
+                shown = null;
+                toRetest.clear();
+                matched.clear();
+                results.clear();
+            } else if (options.getExecutor() == null) {
+                publish(text, index.search(compile(text), options.getLimit()));
+            } else {
+                SearchIndex<T>.Snapshot snapshot = index.snapshot();
+                SearchQuery query = compile(text);
+                BooleanSupplier stale = () -> generation.get() != current;
+                pending = options.getExecutor().schedule(() -> {
+                    List<T> found = snapshot.search(query, options.getLimit(), stale);
+                    if (found != null) {
+                        options.getUpdateScheduler().accept(() -> {
+                            if (!stale.getAsBoolean()) {
+                                publish(text, found);
+                            }
+                        });
+                    }
+                }, (long) (options.getDebounce().toMillis() * 1000), TimeUnit.MICROSECONDS);
+            }
+        }
+
+        private void publish(String text, List<T> found) {
+            List<T> beans = new ArrayList<>(found.size());
+            matched.beginGeneration();
+            found.forEach(bean -> {
+                // unless removed from the collection since the snapshot
+                if (index.contains(bean)) {
+                    fill(matched.stamp(bean), bean, text, isRanked() ? index.score(bean, compile(text)) : 0);
+                    beans.add(bean);
+                }
+            });
+            matched.endGeneration();
+            if (!isRanked()) {
+                sortByPosition(beans);
+            }
+            results.setAll(beans);
+            shown = text;
+            if (!toRetest.isEmpty()) {
+                // changed while the search was running, maybe after its snapshot
+                scheduleUpdate();
+            }
         }
-        return !matched.isEmpty();
     }
 
-    private static class MatchedItem {
-        private final Set<Map.Entry<String, JsonElement>> matchedFields = Sets.newHashSet();
+    /**
+     * Indexes the items, and keeps the index and the results in sync with them: a bean removed from the items leaves
+     * the results right away.
+     *
+     * @param results the list the results of {@link Search#query(String)} are published to
+     */
+    static <T> Search<T> search(ObservableList<T> items, ObservableList<T> results, Options<T> options) {
+        SearchIndex<T> index = options.getFields().isEmpty()
+                ? new SearchIndex<>(bean -> jsonFields(gson.toJsonTree(bean)))
+                : new SearchIndex<>(options.getFields());
+        index.setNameField(options.getNameField());
+        index.setFieldPostings(options.isQueryLanguage());
+        Search<T> search = new Search<>(index, items, results, options);
+        items.addListener((ListChangeListener<? super T>) c -> {
+            while(c.next()) {
+                if (c.wasPermutated() || c.wasAdded() || c.wasRemoved()) {
+                    search.moved();
+                }
+                c.getRemoved().forEach(o -> {
+                    index.remove(o);
+                    search.evict(o);
+                });
+                c.getAddedSubList().forEach(search::changed);
+                if(c.wasUpdated()) {
+                    for (int i = c.getFrom(); i < c.getTo(); i++) {
+                        search.changed(c.getList().get(i));
+                    }
+                }
+            }
+        });
+        items.forEach(index::add);
+        return search;
+    }
+
+    /**
+     * @param list a list returned by {@code attachToTextField}
+     * @return the match state of its current results, e.g. to check its footprint with {@link MatchState#size()}
+     */
+    public static MatchState<?, ?> getMatchState(ListView<?> list) {
+        return (MatchState<?, ?>) list.getProperties().get(MatchState.class);
     }
 
     /**
      * Binds a {@code {@link TextField}} to a collection of beans, to perform a 'search-as-you-type'
-     * in this collection among all the fields of the bean. Relies on a JSON representation of the bean.
+     * in this collection among all the fields of the bean. Relies on a JSON representation of the bean, flattened
+     * by dotted path (see {@link Options#setFields(List)}).
      *
      * @param node {@code {@link TextField}} representing the search input
      * @param items collection of beans to search in
@@ -88,9 +730,10 @@ public class SearchBox {
 
     /**
      * Binds a {@code {@link TextField}} to an observable list of beans, to perform a 'search-as-you-type'
-     * in this collection among all the fields of the bean. Relies on a JSON representation of the bean.
-     * Will adapt to changes in the observable list (new elements are added, old ones removed, and for the updated ones
-     * the JSON representation will be regenerated)
+     * in this collection among all the fields of the bean. Relies on a JSON representation of the bean, flattened
+     * by dotted path (see {@link Options#setFields(List)}).
+     * Will adapt to changes in the observable list (new elements are added, old ones removed, also from the shown
+     * results, and for the updated ones the JSON representation will be regenerated).
      *
      * @param node {@code {@link TextField}} representing the search input
      * @param items collection of beans to search in
@@ -101,33 +744,23 @@ public class SearchBox {
      * to adjust its size or opacity to his taste.
      */
     public static <T> ListView<T> attachToTextField(TextField node, ObservableList<T> items, Callback<T, String> name, BiConsumer<T, JsonElement> onSelected) {
-        FilteredList<T> itemsFiltered = items.filtered(item -> false);
+        return attachToTextField(node, items, name, onSelected, new Options<>());
+    }
 
-        ObservableMap<T, JsonElement> itemsJsoned = FXCollections.observableHashMap();
-        items.addListener((ListChangeListener<? super T>) c -> {
-            while(c.next()) {
-                c.getAddedSubList().forEach(o -> itemsJsoned.put(o, gson.toJsonTree(o)));
-                c.getRemoved().forEach(itemsJsoned::remove);
-                if(c.wasUpdated()) {
-                    for (int i = c.getFrom(); i < c.getTo(); i++) {
-                        itemsJsoned.put(c.getList().get(i), gson.toJsonTree(c.getList().get(i)));
-                    }
-                }
-            }
-        });
-        items.forEach(o -> itemsJsoned.put(o, gson.toJsonTree(o)));
+    /**
+     * Same as {@link #attachToTextField(TextField, ObservableList, Callback, BiConsumer)}, tuned by some options, e.g.
+     * to search on a background executor. With {@link Options#setFields(List) field extractors}, the selection callback
+     * gets an object of the extracted fields rather than the JSON representation of the bean.
+     */
+    public static <T> ListView<T> attachToTextField(TextField node, ObservableList<T> items, Callback<T, String> name, BiConsumer<T, JsonElement> onSelected, Options<T> options) {
+        ObservableList<T> results = FXCollections.observableArrayList();
+        Search<T> search = search(items, results, options);
 
-        ObservableMap<T, MatchedItem> matched = FXCollections.observableHashMap();
-        node.textProperty().addListener((observable, oldValue, newValue) -> {
-            if(Strings.isNullOrEmpty(newValue)) {
-                itemsFiltered.setPredicate(t -> false);
-            } else {
-                itemsFiltered.setPredicate(bean -> jsonFindValue(itemsJsoned.get(bean), matched.computeIfAbsent(bean, t -> new MatchedItem()).matchedFields, newValue));
-            }
-        });
+        node.textProperty().addListener((observable, oldValue, newValue) -> search.query(newValue));
 
         ListView<T> list = new ListView<>();
-        list.setItems(itemsFiltered);
+        list.setItems(results);
+        list.getProperties().put(MatchState.class, search.matched);
         Popup stage = new Popup();
         stage.getContent().add(list);
         stage.setAutoHide(true);
@@ -137,34 +770,14 @@ public class SearchBox {
         list.setPrefWidth(600.);
         list.setOpacity(.8);
 
-        list.setCellFactory(param -> new ListCell<T>() {
-            @Override
-            protected void updateItem(T item, boolean empty) {
-                super.updateItem(item, empty);
-                if(!empty && item  != null) {
-                    Label nameLabel = new Label(name.call(item));
-                    TextFlow label = new TextFlow(nameLabel);
-                    nameLabel.setMaxWidth(USE_PREF_SIZE);
-                    nameLabel.setPrefWidth(150);
-                    nameLabel.setEllipsisString("...");
-                    matched.get(item).matchedFields.forEach(o -> {
-                        Label fieldName = new Label(" " + o.getKey() + ": ");
-                        fieldName.setStyle("-fx-font-weight:bold;");
-                        label.getChildren().addAll(fieldName, new Label(o.getValue().toString()));
-                    });
-                    setGraphic(label);
-                } else {
-                    setGraphic(null);
-                }
-            }
-        });
+        list.setCellFactory(param -> new ResultCell<>(name, search));
 
         list.setOnKeyPressed(event -> {
             switch (event.getCode()) {
                 case ENTER:
                     logger.debug("Selected " + list.getSelectionModel().getSelectedItem());
                     T selected = list.getSelectionModel().getSelectedItem();
-                    onSelected.accept(selected, itemsJsoned.get(selected));
+                    onSelected.accept(selected, selected == null ? null : selectionJson(selected, options.getFields()));
                     stage.hide();
                     break;
                 case ESCAPE:
@@ -176,7 +789,7 @@ public class SearchBox {
 
         list.setOnMouseClicked(event -> {
             T selected = list.getSelectionModel().getSelectedItem();
-            onSelected.accept(selected, itemsJsoned.get(selected));
+            onSelected.accept(selected, selected == null ? null : selectionJson(selected, options.getFields()));
             logger.debug("Mouse clicked on " + list.getSelectionModel().getSelectedItem());
         });
 
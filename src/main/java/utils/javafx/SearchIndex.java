@@ -0,0 +1,1394 @@
+package utils.javafx;
+
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * An inverted n-gram index over the field values of a collection of beans, for {@link SearchBox}: every 1, 2 and 3
+ * character substring of every (lowercased) value is mapped to the sorted list of the ids of the documents containing
+ * it. A query only intersects the posting lists of its own n-grams, and only checks the few documents that contain all
+ * of them, instead of going through the whole collection.
+ * <p>
+ * Documents get increasing ids as they are added, so that the posting lists stay sorted by only ever being appended
+ * to. A removed document is only marked dead, and skipped by the queries; the ids are renumbered and the dead
+ * documents dropped from the posting lists once they make up half of the index.
+ * <p>
+ * The results of the last few queries are kept: a query that extends one of them (e.g. "abc" after "ab") only checks
+ * its matches, and going back to one of them (backspace) reuses it as is, so that typing costs about the size of the
+ * current results rather than of the posting lists. A result stays usable while documents are added or updated: the
+ * documents appended since it was computed are searched on top of it.
+ * <p>
+ * The field names and values are interned, and lowercased once at indexing time: in a catalog where many beans share
+ * the same exchange or currency, they all share the same strings, and the beans with the same fields share the same
+ * array of names. The strings are pooled in a flat open-addressing table, so that a value no other bean shares only
+ * costs a slot of an array; a value already in lowercase is its own lowercase.
+ * <p>
+ * A search can also be fuzzy, allowing a few edits between the pattern and the values (see
+ * {@link #searchFuzzy(String, int, int)}): the candidates are the documents sharing enough n-grams with the pattern,
+ * checked with the bit-parallel {@link FuzzyPattern}.
+ * <p>
+ * A {@link SearchQuery} made of several terms only intersects the posting lists of its terms, the shortest first. With
+ * {@link #setFieldPostings(boolean) field postings}, every n-gram is also indexed per field, so that the terms scoped
+ * to a field ({@code ccy:EUR}) only go through the documents having it in that field.
+ * <p>
+ * A search can be limited to its best few matches, ranked by how well they match (see {@link #search(String, int)}):
+ * they are kept in a bounded heap while the candidates are checked, and the search stops as soon as the heap is full of
+ * exact matches of the name field, leaving the number of fields matched to rank the ones found until then.
+ * <p>
+ * The index has a single writer, the thread keeping it in sync with the beans (usually the FX thread, from a
+ * {@code ListChangeListener}). Queries run on a {@link #snapshot()}, which can be handed to any other thread: the
+ * posting lists are append-only and published through volatile fields, and a compaction builds new structures rather
+ * than rewriting the ones a snapshot may still be reading.
+ *
+ * @param <T> bean class
+ */
+public class SearchIndex<T> {
+
+    private static final int GRAM = 3;
+    private static final int RECENT_RESULTS = 8;
+    private static final int CANCELLATION_CHECK_INTERVAL = 1024;
+    // field ids are packed above the n-grams in the posting keys
+    private static final int FIELD_SHIFT = 50;
+    private static final int MAX_SCOPED_FIELDS = (1 << (64 - FIELD_SHIFT)) - 1;
+    private static final ThreadLocal<int[]> GRAM_COUNTS = ThreadLocal.withInitial(() -> new int[0]);
+    private static final String[] NO_STRINGS = new String[0];
+
+    private static final int CONTAINS = 1;
+    private static final int PREFIX = 2;
+    private static final int EXACT = 3;
+
+    private final Function<T, Map<String, String>> fields;
+    private final List<FieldExtractor<T>> extractors;
+    private final String[] extractorNames;
+
+    private final Map<T, Integer> ids = new HashMap<>();
+    private Object[] beans = new Object[16];
+    private String[][] names = new String[16][];
+    private String[][] values = new String[16][];
+    private String[][] lowerValues = new String[16][];
+    private int docCount = 0;
+    private final BitSet dead = new BitSet();
+    private int deadCount = 0;
+    private Map<Long, Postings> postings = new ConcurrentHashMap<>();
+    // by lowercase name, for the queries, and by name, for the writer
+    private final Map<String, Integer> fieldIds = new ConcurrentHashMap<>();
+    private final Map<String, Integer> fieldIdsByName = new HashMap<>();
+    private String nameField = null;
+    private boolean fieldPostings = false;
+
+    // canonical strings, values and their lowercase, rebuilt from the live documents by a compaction
+    private StringPool strings = new StringPool();
+    private Map<List<String>, String[]> nameLists = new HashMap<>();
+
+    // the last fuzzy pattern scored by the writer, compiled
+    private String lastFuzzyPattern = null;
+    private int lastFuzzyEdits = 0;
+    private FuzzyPattern lastFuzzy = null;
+
+    // the last query scored by the writer, compiled
+    private SearchQuery lastQuery = null;
+    private int lastQueryFieldCount = 0;
+    private CompiledQuery lastCompiledQuery = null;
+
+    // incremented when the documents are renumbered, which makes the recent results meaningless
+    private int version = 0;
+    private volatile Snapshot published = null;
+
+    private final Deque<Result> recent = new ArrayDeque<>();
+    private volatile int lastCandidateCount = 0;
+
+    /**
+     * @param fields gives the searchable fields of a bean, by name
+     */
+    public SearchIndex(Function<T, Map<String, String>> fields) {
+        this.fields = fields;
+        this.extractors = null;
+        this.extractorNames = null;
+    }
+
+    /**
+     * @param extractors read the searchable fields of a bean, the same ones for every bean
+     */
+    public SearchIndex(List<FieldExtractor<T>> extractors) {
+        this.fields = null;
+        this.extractors = new ArrayList<>(extractors);
+        this.extractorNames = new String[extractors.size()];
+        for (int i = 0; i < extractorNames.length; i++) {
+            extractorNames[i] = extractors.get(i).getName();
+        }
+    }
+
+    /**
+     * Indexes a bean, or indexes it again if it already is.
+     */
+    public void add(T bean) {
+        Integer previous = ids.get(bean);
+        if (previous != null) {
+            kill(previous);
+        }
+        int doc = docCount;
+        ensureCapacity(doc + 1);
+        String[] docNames;
+        String[] docValues;
+        if (extractors != null) {
+            // the names are the same for all the beans
+            docNames = extractorNames;
+            docValues = new String[docNames.length];
+            for (int i = 0; i < docNames.length; i++) {
+                docValues[i] = extractors.get(i).extract(bean);
+            }
+        } else {
+            Map<String, String> beanFields = fields.apply(bean);
+            docNames = internNames(beanFields.keySet().toArray(NO_STRINGS));
+            docValues = new String[docNames.length];
+            for (int i = 0; i < docNames.length; i++) {
+                docValues[i] = beanFields.get(docNames[i]);
+            }
+        }
+        String[] docLowerValues = new String[docNames.length];
+        for (int i = 0; i < docNames.length; i++) {
+            docValues[i] = intern(docValues[i] == null ? "" : docValues[i]);
+            docLowerValues[i] = lowerCase(docValues[i]);
+        }
+        beans[doc] = bean;
+        names[doc] = docNames;
+        values[doc] = docValues;
+        lowerValues[doc] = docLowerValues;
+        ids.put(bean, doc);
+        for (int f = 0; f < docNames.length; f++) {
+            // registered either way, for the queries to know the fields
+            long field = fieldKey(fieldId(docNames[f]));
+            post(doc, docLowerValues[f], 0);
+            if (fieldPostings && field != 0) {
+                post(doc, docLowerValues[f], field);
+            }
+        }
+        docCount++;
+        published = null;
+        compactIfNeeded();
+    }
+
+    /**
+     * Indexes a bean again, after its fields have changed.
+     */
+    public void update(T bean) {
+        add(bean);
+    }
+
+    public void remove(T bean) {
+        Integer doc = ids.remove(bean);
+        if (doc != null) {
+            kill(doc);
+            published = null;
+            compactIfNeeded();
+        }
+    }
+
+    /**
+     * Appends a document to the posting lists of the n-grams of a value, the global ones or those of a field.
+     */
+    private void post(int doc, String value, long field) {
+        for (int i = 0; i < value.length(); i++) {
+            for (int n = 1; n <= GRAM && i + n <= value.length(); n++) {
+                postings.computeIfAbsent(field | gram(value, i, n), key -> new Postings()).add(doc);
+            }
+        }
+    }
+
+    private void kill(int doc) {
+        dead.set(doc);
+        deadCount++;
+        beans[doc] = null;
+        names[doc] = null;
+        values[doc] = null;
+        lowerValues[doc] = null;
+    }
+
+    /**
+     * @param nameField the field that ranks above the others when they match as well, e.g. the name of an instrument.
+     *                  null (the default) to rank all the fields the same
+     */
+    public void setNameField(String nameField) {
+        this.nameField = nameField;
+        published = null;
+    }
+
+    public String getNameField() {
+        return nameField;
+    }
+
+    /**
+     * @param fieldPostings whether to index every n-gram per field as well, for the {@link SearchQuery} terms scoped to
+     *                      a field: roughly twice the posting lists, for scoped terms costing the size of their field's
+     *                      matches rather than of all the fields'. Off by default; the documents already indexed are
+     *                      posted per field when turned on, and the field posting lists dropped when turned off
+     */
+    public void setFieldPostings(boolean fieldPostings) {
+        if (!fieldPostings && this.fieldPostings) {
+            postings.keySet().removeIf(key -> key >>> FIELD_SHIFT != 0);
+        } else if (fieldPostings && !this.fieldPostings) {
+            for (int doc = 0; doc < docCount; doc++) {
+                if (!dead.get(doc)) {
+                    for (int f = 0; f < names[doc].length; f++) {
+                        long field = fieldKey(fieldId(names[doc][f]));
+                        if (field != 0) {
+                            post(doc, lowerValues[doc][f], field);
+                        }
+                    }
+                }
+            }
+        }
+        this.fieldPostings = fieldPostings;
+        published = null;
+    }
+
+    public boolean isFieldPostings() {
+        return fieldPostings;
+    }
+
+    /**
+     * @return the number of beans indexed
+     */
+    public int size() {
+        return ids.size();
+    }
+
+    public boolean contains(T bean) {
+        return ids.containsKey(bean);
+    }
+
+    /**
+     * @return a consistent view of the index as it is now, that can be searched from any thread. To be called by the
+     * writer.
+     */
+    public Snapshot snapshot() {
+        Snapshot snapshot = published;
+        if (snapshot == null) {
+            snapshot = new Snapshot();
+            published = snapshot;
+        }
+        return snapshot;
+    }
+
+    /**
+     * @return the beans with at least one field containing the pattern (case-insensitive), in indexing order
+     */
+    public List<T> search(String pattern) {
+        return snapshot().search(pattern);
+    }
+
+    /**
+     * @param limit the maximum number of matches to return
+     * @return the best matches of the pattern, best first: an exact match before a prefix before any other match, the
+     * name field before the others, then the most fields matched, then indexing order. The search stops as soon as it
+     * has {@code limit} exact matches of the name field: the number of fields matched only ranks the ones found until
+     * then
+     */
+    public List<T> search(String pattern, int limit) {
+        return snapshot().search(pattern, limit, () -> false);
+    }
+
+    /**
+     * @param limit the maximum number of matches to return, ranked by the sum of the scores of the positive terms, each
+     *              as by {@link #search(String, int)}. {@code Integer.MAX_VALUE} for all the matches, unranked, in
+     *              indexing order
+     * @return the beans matching all the terms of the query
+     */
+    public List<T> search(SearchQuery query, int limit) {
+        return snapshot().search(query, limit, () -> false);
+    }
+
+    /**
+     * A search tolerating typos: a field matches if some part of it is at most {@code maxEdits} insertions, deletions
+     * or substitutions away from the pattern. At most as many edits as the pattern has characters minus one are
+     * allowed, as any field would match with more; patterns longer than {@value FuzzyPattern#MAX_LENGTH} characters
+     * are searched exactly.
+     *
+     * @param limit the maximum number of matches to return, the fewest edits first, then as ranked by
+     *              {@link #search(String, int)}. {@code Integer.MAX_VALUE} for all the matches, unranked, in indexing
+     *              order
+     */
+    public List<T> searchFuzzy(String pattern, int maxEdits, int limit) {
+        return snapshot().searchFuzzy(pattern, maxEdits, limit, () -> false);
+    }
+
+    /**
+     * @return the number of documents the last search had to check, 0 if it reused a recent result
+     */
+    public int getLastCandidateCount() {
+        return lastCandidateCount;
+    }
+
+    /**
+     * @return how well a bean matches the pattern, comparable with the other beans' as ranked by
+     * {@link #search(String, int)}: the higher the better, 0 if it does not match or is not indexed. To be called by
+     * the writer.
+     */
+    public int score(T bean, String pattern) {
+        Integer doc = ids.get(bean);
+        return doc == null ? 0 : score(names[doc], lowerValues[doc], pattern.toLowerCase(), nameField);
+    }
+
+    /**
+     * @return the score of a bean for {@link #searchFuzzy(String, int, int)}, 0 if it does not match or is not indexed.
+     * To be called by the writer.
+     */
+    public int scoreFuzzy(T bean, String pattern, int maxEdits) {
+        FuzzyPattern fuzzy = fuzzy(pattern, maxEdits);
+        if (fuzzy == null) {
+            return score(bean, pattern);
+        }
+        Integer doc = ids.get(bean);
+        return doc == null ? 0 : fuzzyScore(names[doc], lowerValues[doc], fuzzy, nameField);
+    }
+
+    /**
+     * @return the score of a bean for {@link #search(SearchQuery, int)}, 0 if it does not match or is not indexed. To be
+     * called by the writer.
+     */
+    public int score(T bean, SearchQuery query) {
+        if (query.isSimple()) {
+            return scoreFuzzy(bean, query.getTerms().get(0).getValue(), query.getMaxEdits());
+        }
+        Integer doc = ids.get(bean);
+        return doc == null || query.getTerms().isEmpty() ? 0 : compiled(query).score(names[doc], lowerValues[doc], nameField);
+    }
+
+    private CompiledQuery compiled(SearchQuery query) {
+        // a new field may make a scoped term possible
+        if (query != lastQuery || fieldIds.size() != lastQueryFieldCount) {
+            lastQuery = query;
+            lastQueryFieldCount = fieldIds.size();
+            lastCompiledQuery = new CompiledQuery(query, fieldIds, false);
+        }
+        return lastCompiledQuery;
+    }
+
+    private FuzzyPattern fuzzy(String pattern, int maxEdits) {
+        if (!pattern.equals(lastFuzzyPattern) || maxEdits != lastFuzzyEdits) {
+            lastFuzzyPattern = pattern;
+            lastFuzzyEdits = maxEdits;
+            lastFuzzy = compileFuzzy(pattern, maxEdits);
+        }
+        return lastFuzzy;
+    }
+
+    /**
+     * @return the compiled pattern, or null if it is to be searched exactly
+     */
+    private static FuzzyPattern compileFuzzy(String pattern, int maxEdits) {
+        String lowerPattern = pattern.toLowerCase();
+        int edits = Math.min(maxEdits, lowerPattern.length() - 1);
+        return edits <= 0 || lowerPattern.length() > FuzzyPattern.MAX_LENGTH ? null : new FuzzyPattern(lowerPattern, edits);
+    }
+
+    private static int fuzzyScore(String[] docNames, String[] docLowerValues, FuzzyPattern fuzzy, String nameField) {
+        if (docLowerValues == null || docNames == null) {
+            return 0;
+        }
+        int best = 0;
+        boolean bestIsName = false;
+        int matched = 0;
+        for (int i = 0; i < docLowerValues.length; i++) {
+            int edits = fuzzy.distance(docLowerValues[i]);
+            if (edits <= fuzzy.getMaxEdits()) {
+                matched++;
+                int kind = fuzzy.getMaxEdits() - edits + 1;
+                boolean isName = docNames[i].equals(nameField);
+                if (kind > best || kind == best && isName) {
+                    best = kind;
+                    bestIsName = isName;
+                }
+            }
+        }
+        return matched == 0 ? 0 : packScore(best, bestIsName, matched);
+    }
+
+    private static int score(String[] docNames, String[] docLowerValues, String lowerPattern, String nameField) {
+        if (docLowerValues == null || docNames == null) {
+            return 0;
+        }
+        int best = 0;
+        boolean bestIsName = false;
+        int matched = 0;
+        for (int i = 0; i < docLowerValues.length; i++) {
+            String value = docLowerValues[i];
+            int kind = value.equals(lowerPattern) ? EXACT : value.startsWith(lowerPattern) ? PREFIX : value.contains(lowerPattern) ? CONTAINS : 0;
+            if (kind > 0) {
+                matched++;
+                boolean isName = docNames[i].equals(nameField);
+                if (kind > best || kind == best && isName) {
+                    best = kind;
+                    bestIsName = isName;
+                }
+            }
+        }
+        return matched == 0 ? 0 : packScore(best, bestIsName, matched);
+    }
+
+    /**
+     * @return the fields of a bean containing the pattern, as (name, value) pairs, empty if the bean is not indexed. To
+     * be called by the writer.
+     */
+    public List<Map.Entry<String, String>> matchedFields(T bean, String pattern) {
+        Integer doc = ids.get(bean);
+        if (doc == null) {
+            return Collections.emptyList();
+        }
+        String lowerPattern = pattern.toLowerCase();
+        List<Map.Entry<String, String>> matched = new ArrayList<>();
+        String[] docLowerValues = lowerValues[doc];
+        for (int i = 0; i < docLowerValues.length; i++) {
+            if (docLowerValues[i].contains(lowerPattern)) {
+                matched.add(new AbstractMap.SimpleImmutableEntry<>(names[doc][i], values[doc][i]));
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * @return the fields of a bean matching a positive term of the query. To be called by the writer.
+     */
+    public List<Map.Entry<String, String>> matchedFields(T bean, SearchQuery query) {
+        if (query.isSimple()) {
+            return matchedFieldsFuzzy(bean, query.getTerms().get(0).getValue(), query.getMaxEdits());
+        }
+        Integer doc = ids.get(bean);
+        if (doc == null) {
+            return Collections.emptyList();
+        }
+        CompiledQuery compiled = compiled(query);
+        List<Map.Entry<String, String>> matched = new ArrayList<>();
+        for (int i = 0; i < names[doc].length; i++) {
+            for (CompiledTerm term : compiled.positive) {
+                if (term.matches(names[doc][i], lowerValues[doc][i])) {
+                    matched.add(new AbstractMap.SimpleImmutableEntry<>(names[doc][i], values[doc][i]));
+                    break;
+                }
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * @return the fields of a bean matching the pattern within {@code maxEdits} edits, see
+     * {@link #searchFuzzy(String, int, int)}. To be called by the writer.
+     */
+    public List<Map.Entry<String, String>> matchedFieldsFuzzy(T bean, String pattern, int maxEdits) {
+        FuzzyPattern fuzzy = fuzzy(pattern, maxEdits);
+        Integer doc = ids.get(bean);
+        if (fuzzy == null || doc == null) {
+            return matchedFields(bean, pattern);
+        }
+        List<Map.Entry<String, String>> matched = new ArrayList<>();
+        String[] docLowerValues = lowerValues[doc];
+        for (int i = 0; i < docLowerValues.length; i++) {
+            if (fuzzy.matches(docLowerValues[i])) {
+                matched.add(new AbstractMap.SimpleImmutableEntry<>(names[doc][i], values[doc][i]));
+            }
+        }
+        return matched;
+    }
+
+    private String intern(String s) {
+        return strings.intern(s);
+    }
+
+    private String lowerCase(String value) {
+        // toLowerCase returns the string itself when there is nothing to lower
+        return intern(value.toLowerCase());
+    }
+
+    /**
+     * @return the number of distinct strings (names, values and lowercase values) the documents hold
+     */
+    int pooledStringCount() {
+        return strings.size;
+    }
+
+    /**
+     * @return the shared array with these names, in this order
+     */
+    private String[] internNames(String[] docNames) {
+        String[] canonical = nameLists.get(Arrays.asList(docNames));
+        if (canonical == null) {
+            for (int i = 0; i < docNames.length; i++) {
+                docNames[i] = intern(docNames[i]);
+            }
+            nameLists.put(Arrays.asList(docNames), docNames);
+            canonical = docNames;
+        }
+        return canonical;
+    }
+
+    /**
+     * Packs the quality of a match in an int, the best match kind first, then whether it is on the name field, then the
+     * number of fields matched.
+     */
+    private static int packScore(int kind, boolean isName, int matched) {
+        return (2 * kind + (isName ? 1 : 0)) << 16 | Math.min(matched, 0xFFFF);
+    }
+
+    private int fieldId(String name) {
+        Integer id = fieldIdsByName.get(name);
+        if (id == null) {
+            String lowerName = name.toLowerCase();
+            id = fieldIds.get(lowerName);
+            if (id == null) {
+                id = fieldIds.size();
+                fieldIds.put(lowerName, id);
+            }
+            fieldIdsByName.put(name, id);
+        }
+        return id;
+    }
+
+    /**
+     * @return the bits to set on the n-grams of a field for its own posting lists, 0 if there are too many fields to
+     * give them their own
+     */
+    private static long fieldKey(int fieldId) {
+        return fieldId < MAX_SCOPED_FIELDS ? (long) (fieldId + 1) << FIELD_SHIFT : 0;
+    }
+
+    /**
+     * Packs up to 3 characters and their count in a long.
+     */
+    private static long gram(String s, int from, int n) {
+        long key = n;
+        for (int i = 0; i < n; i++) {
+            key = (key << 16) | s.charAt(from + i);
+        }
+        return key;
+    }
+
+    /**
+     * Keeps in {@code docs[0..size)} the ids that are also in {@code ids[0..length)}.
+     * @return the new size
+     */
+    private static int intersect(int[] docs, int size, int[] ids, int length) {
+        int kept = 0;
+        int j = 0;
+        for (int i = 0; i < size && j < length; i++) {
+            int doc = docs[i];
+            j = seek(ids, length, doc, j);
+            if (j < length && ids[j] == doc) {
+                docs[kept++] = doc;
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * @return the first index from {@code from} whose id is at least {@code id}, by galloping then binary search
+     */
+    private static int seek(int[] ids, int length, int id, int from) {
+        int bound = 1;
+        int low = from;
+        while (from + bound < length && ids[from + bound] < id) {
+            low = from + bound;
+            bound <<= 1;
+        }
+        int index = Arrays.binarySearch(ids, low, Math.min(from + bound + 1, length), id);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > beans.length) {
+            int newCapacity = Math.max(capacity, 2 * beans.length);
+            beans = Arrays.copyOf(beans, newCapacity);
+            names = Arrays.copyOf(names, newCapacity);
+            values = Arrays.copyOf(values, newCapacity);
+            lowerValues = Arrays.copyOf(lowerValues, newCapacity);
+        }
+    }
+
+    private void compactIfNeeded() {
+        if (deadCount > 64 && deadCount > docCount / 2) {
+            compact();
+        }
+    }
+
+    /**
+     * Drops the dead documents: the live ones are renumbered from 0, in the same order, into new posting lists.
+     */
+    public void compact() {
+        int[] newIds = new int[docCount];
+        int live = docCount - deadCount;
+        int capacity = Math.max(16, live + live / 2);
+        Object[] newBeans = new Object[capacity];
+        String[][] newNames = new String[capacity][];
+        String[][] newValues = new String[capacity][];
+        String[][] newLowerValues = new String[capacity][];
+        live = 0;
+        for (int doc = 0; doc < docCount; doc++) {
+            if (dead.get(doc)) {
+                newIds[doc] = -1;
+            } else {
+                newIds[doc] = live;
+                newBeans[live] = beans[doc];
+                newNames[live] = names[doc];
+                newValues[live] = values[doc];
+                newLowerValues[live] = lowerValues[doc];
+                live++;
+            }
+        }
+        Map<Long, Postings> newPostings = new ConcurrentHashMap<>();
+        postings.forEach((gram, list) -> {
+            Postings remapped = list.remap(newIds);
+            if (remapped.size > 0) {
+                newPostings.put(gram, remapped);
+            }
+        });
+        beans = newBeans;
+        names = newNames;
+        values = newValues;
+        lowerValues = newLowerValues;
+        postings = newPostings;
+        strings = new StringPool();
+        nameLists = new HashMap<>();
+        for (int doc = 0; doc < live; doc++) {
+            @SuppressWarnings("unchecked")
+            T bean = (T) beans[doc];
+            ids.put(bean, doc);
+            if (extractors == null) {
+                internNames(names[doc]);
+            }
+            for (int i = 0; i < values[doc].length; i++) {
+                intern(values[doc][i]);
+                intern(lowerValues[doc][i]);
+            }
+        }
+        docCount = live;
+        dead.clear();
+        deadCount = 0;
+        version++;
+        published = null;
+    }
+
+    /**
+     * A consistent, read-only view of the index: the documents, dead documents and posting lists as of its creation.
+     * Documents removed since may still be returned, documents added since are not.
+     */
+    public final class Snapshot {
+        private final Object[] beans = SearchIndex.this.beans;
+        private final String[][] lowerValues = SearchIndex.this.lowerValues;
+        private final int docCount = SearchIndex.this.docCount;
+        private final BitSet dead = (BitSet) SearchIndex.this.dead.clone();
+        private final String[][] names = SearchIndex.this.names;
+        private final Map<Long, Postings> postings = SearchIndex.this.postings;
+        private final int version = SearchIndex.this.version;
+        private final String nameField = SearchIndex.this.nameField;
+        private final boolean fieldPostings = SearchIndex.this.fieldPostings;
+        // the score of an exact match of the name field, before counting the fields matched
+        private final int exactScore = packScore(EXACT, nameField != null, 0);
+
+        private Snapshot() {
+        }
+
+        /**
+         * @return the number of beans in this snapshot
+         */
+        public int size() {
+            return docCount - dead.cardinality();
+        }
+
+        /**
+         * @see SearchIndex#search(String)
+         */
+        public List<T> search(String pattern) {
+            return search(pattern, () -> false);
+        }
+
+        /**
+         * @param cancelled checked regularly: the search gives up as soon as it returns true
+         * @return the matches, or null if the search has been cancelled
+         */
+        public List<T> search(String pattern, BooleanSupplier cancelled) {
+            return search(pattern, Integer.MAX_VALUE, cancelled);
+        }
+
+        /**
+         * @param limit     the maximum number of matches to return, ranked as by {@link SearchIndex#search(String, int)}.
+         *                  {@code Integer.MAX_VALUE} for all the matches, unranked, in indexing order
+         * @param cancelled checked regularly: the search gives up as soon as it returns true
+         * @return the matches, or null if the search has been cancelled
+         */
+        public List<T> search(String pattern, int limit, BooleanSupplier cancelled) {
+            String lowerPattern = pattern.toLowerCase();
+            Result reused = null;
+            boolean known = false;
+            synchronized (recent) {
+                for (Result result : recent) {
+                    // a result remembered by a later snapshot may hold documents this one does not have
+                    if (result.version != version || result.docCount > docCount) {
+                        continue;
+                    }
+                    if (result.query.equals(lowerPattern)) {
+                        recent.remove(result);
+                        recent.addFirst(result);
+                        reused = result;
+                        known = result.docCount == docCount;
+                        break;
+                    }
+                    if (reused == null && lowerPattern.contains(result.query)) {
+                        // the matches of the new pattern can only be among the matches of the one it contains
+                        reused = result;
+                    }
+                }
+            }
+            int[] candidates;
+            if (reused == null) {
+                candidates = candidates(lowerPattern, 0);
+            } else if (reused.docCount == docCount) {
+                candidates = reused.docs;
+            } else {
+                // plus the documents added (or updated) since
+                int[] added = candidates(lowerPattern, reused.docCount);
+                candidates = Arrays.copyOf(reused.docs, reused.docs.length + added.length);
+                System.arraycopy(added, 0, candidates, reused.docs.length, added.length);
+            }
+            lastCandidateCount = known ? 0 : candidates.length;
+            if (limit == Integer.MAX_VALUE) {
+                return known ? beans(candidates, candidates.length) : all(lowerPattern, candidates, cancelled);
+            }
+            return top(lowerPattern, candidates, known, limit, cancelled);
+        }
+
+        private List<T> all(String lowerPattern, int[] candidates, BooleanSupplier cancelled) {
+            int[] docs = new int[candidates.length];
+            int size = 0;
+            for (int i = 0; i < candidates.length; i++) {
+                if (i % CANCELLATION_CHECK_INTERVAL == 0 && cancelled.getAsBoolean()) {
+                    return null;
+                }
+                int doc = candidates[i];
+                if (!dead.get(doc) && matches(doc, lowerPattern)) {
+                    docs[size++] = doc;
+                }
+            }
+            docs = Arrays.copyOf(docs, size);
+            remember(lowerPattern, docs);
+            return beans(docs, size);
+        }
+
+        /**
+         * @param known whether the candidates are already known to match
+         */
+        private List<T> top(String lowerPattern, int[] candidates, boolean known, int limit, BooleanSupplier cancelled) {
+            Ranking ranking = new Ranking(limit);
+            // all the matches, to be remembered for the next queries, unless the search stops early
+            int[] docs = known ? null : new int[candidates.length];
+            int size = 0;
+            for (int i = 0; i < candidates.length; i++) {
+                if (i % CANCELLATION_CHECK_INTERVAL == 0 && cancelled.getAsBoolean()) {
+                    return null;
+                }
+                int doc = candidates[i];
+                if (dead.get(doc)) {
+                    continue;
+                }
+                int score = score(doc, lowerPattern);
+                if (score > 0) {
+                    ranking.offer(doc, score);
+                    if (docs != null) {
+                        docs[size++] = doc;
+                    }
+                    if (ranking.isFull() && ranking.worstScore() > exactScore) {
+                        // the later documents could only rank higher by matching more fields
+                        if (!known) {
+                            lastCandidateCount = i + 1;
+                        }
+                        return ranking.beans();
+                    }
+                }
+            }
+            if (docs != null) {
+                remember(lowerPattern, Arrays.copyOf(docs, size));
+            }
+            return ranking.beans();
+        }
+
+        /**
+         * @see SearchIndex#searchFuzzy(String, int, int)
+         * @param cancelled checked regularly: the search gives up as soon as it returns true
+         * @return the matches, or null if the search has been cancelled
+         */
+        public List<T> searchFuzzy(String pattern, int maxEdits, int limit, BooleanSupplier cancelled) {
+            FuzzyPattern fuzzy = compileFuzzy(pattern, maxEdits);
+            if (fuzzy == null) {
+                return search(pattern, limit, cancelled);
+            }
+            int[] candidates = fuzzyCandidates(fuzzy, cancelled);
+            if (candidates == null) {
+                return null;
+            }
+            lastCandidateCount = candidates.length;
+            // no edit, on the name field
+            int exactFuzzyScore = packScore(fuzzy.getMaxEdits() + 1, nameField != null, 0);
+            return collect(candidates, doc -> fuzzyScore(names[doc], lowerValues[doc], fuzzy, nameField), exactFuzzyScore, limit, cancelled);
+        }
+
+        /**
+         * @see SearchIndex#search(SearchQuery, int)
+         * @param cancelled checked regularly: the search gives up as soon as it returns true
+         * @return the matches, or null if the search has been cancelled
+         */
+        public List<T> search(SearchQuery query, int limit, BooleanSupplier cancelled) {
+            if (query.isSimple()) {
+                return searchFuzzy(query.getTerms().get(0).getValue(), query.getMaxEdits(), limit, cancelled);
+            }
+            if (query.getTerms().isEmpty()) {
+                return Collections.emptyList();
+            }
+            CompiledQuery compiled = new CompiledQuery(query, fieldIds, fieldPostings);
+            int[] candidates = compiled.impossible ? new int[0] : queryCandidates(compiled);
+            lastCandidateCount = candidates.length;
+            // every term an exact match of the name field, or of its own field if scoped
+            int exactQueryScore = 0;
+            for (CompiledTerm term : compiled.positive) {
+                boolean onName = nameField != null && (term.field == null || term.field.equalsIgnoreCase(nameField));
+                exactQueryScore += packScore(EXACT, onName, 0);
+            }
+            return collect(candidates, doc -> compiled.score(names[doc], lowerValues[doc], nameField), exactQueryScore, limit, cancelled);
+        }
+
+        /**
+         * Checks the candidates and keeps the matches, all of them in indexing order, or the best ones if limited.
+         *
+         * @param scorer     scores a candidate, 0 if it does not match
+         * @param exactScore the best possible score, before counting the fields matched: the search stops once the
+         *                   limit is reached with scores above it
+         */
+        private List<T> collect(int[] candidates, IntUnaryOperator scorer, int exactScore, int limit, BooleanSupplier cancelled) {
+            boolean ranked = limit != Integer.MAX_VALUE;
+            Ranking ranking = ranked ? new Ranking(limit) : null;
+            int[] docs = ranked ? null : new int[candidates.length];
+            int size = 0;
+            for (int i = 0; i < candidates.length; i++) {
+                if (i % CANCELLATION_CHECK_INTERVAL == 0 && cancelled.getAsBoolean()) {
+                    return null;
+                }
+                int doc = candidates[i];
+                if (dead.get(doc)) {
+                    continue;
+                }
+                int score = scorer.applyAsInt(doc);
+                if (score > 0) {
+                    if (!ranked) {
+                        docs[size++] = doc;
+                    } else {
+                        ranking.offer(doc, score);
+                        if (ranking.isFull() && ranking.worstScore() > exactScore) {
+                            lastCandidateCount = i + 1;
+                            return ranking.beans();
+                        }
+                    }
+                }
+            }
+            return ranked ? ranking.beans() : beans(docs, size);
+        }
+
+        /**
+         * @return the sorted ids of the documents containing all the n-grams of the positive terms, each in its field
+         * if it has its own posting lists, or all the documents if there are none
+         */
+        private int[] queryCandidates(CompiledQuery query) {
+            List<int[]> lists = new ArrayList<>();
+            List<Integer> lengths = new ArrayList<>();
+            for (CompiledTerm term : query.positive) {
+                for (long gram : term.grams()) {
+                    Postings list = postings.get(gram);
+                    if (list == null) {
+                        return new int[0];
+                    }
+                    int length = list.size;
+                    int[] ids = list.ids;
+                    int visible = Arrays.binarySearch(ids, 0, length, docCount);
+                    lists.add(ids);
+                    lengths.add(visible >= 0 ? visible : -visible - 1);
+                }
+            }
+            if (lists.isEmpty()) {
+                int[] all = new int[docCount];
+                for (int doc = 0; doc < docCount; doc++) {
+                    all[doc] = doc;
+                }
+                return all;
+            }
+            return intersectAll(lists, lengths);
+        }
+
+        /**
+         * By the q-gram lemma, k edits destroy at most k * q of the m - q + 1 q-grams of a pattern of length m: a
+         * document can only match if it contains at least the others. q is the longest n-gram length for which this
+         * threshold is positive.
+         *
+         * @return the sorted ids of the documents sharing enough n-grams with the pattern, or null if cancelled
+         */
+        private int[] fuzzyCandidates(FuzzyPattern fuzzy, BooleanSupplier cancelled) {
+            String lowerPattern = fuzzy.getPattern();
+            int m = lowerPattern.length();
+            int k = fuzzy.getMaxEdits();
+            int q = GRAM;
+            while (q > 1 && m - q + 1 - k * q <= 0) {
+                q--;
+            }
+            int threshold = m - q + 1 - k * q;
+            // a repeated n-gram counts as many times as it appears in the pattern
+            Map<Long, Integer> weights = new LinkedHashMap<>();
+            for (int i = 0; i + q <= m; i++) {
+                weights.merge(gram(lowerPattern, i, q), 1, Integer::sum);
+            }
+            List<int[]> lists = new ArrayList<>(weights.size());
+            int[] lengths = new int[weights.size()];
+            int[] listWeights = new int[weights.size()];
+            int available = 0;
+            for (Map.Entry<Long, Integer> entry : weights.entrySet()) {
+                Postings list = postings.get(entry.getKey());
+                if (list != null) {
+                    int length = list.size;
+                    int[] ids = list.ids;
+                    int visible = Arrays.binarySearch(ids, 0, length, docCount);
+                    lengths[lists.size()] = visible >= 0 ? visible : -visible - 1;
+                    listWeights[lists.size()] = entry.getValue();
+                    lists.add(ids);
+                    available += entry.getValue();
+                }
+            }
+            if (available < threshold) {
+                return new int[0];
+            }
+            int[] counts = GRAM_COUNTS.get();
+            if (counts.length < docCount) {
+                counts = new int[Math.max(docCount, 2 * counts.length)];
+                GRAM_COUNTS.set(counts);
+            }
+            int[] found = new int[16];
+            int size = 0;
+            int checked = 0;
+            boolean wasCancelled = false;
+            for (int l = 0; l < lists.size() && !wasCancelled; l++) {
+                int[] ids = lists.get(l);
+                int weight = listWeights[l];
+                for (int j = 0; j < lengths[l]; j++) {
+                    if (++checked % (16 * CANCELLATION_CHECK_INTERVAL) == 0 && cancelled.getAsBoolean()) {
+                        wasCancelled = true;
+                        break;
+                    }
+                    int doc = ids[j];
+                    int before = counts[doc];
+                    counts[doc] = before + weight;
+                    if (before < threshold && before + weight >= threshold) {
+                        if (size == found.length) {
+                            found = Arrays.copyOf(found, 2 * size);
+                        }
+                        found[size++] = doc;
+                    }
+                }
+            }
+            // the counts are shared by the searches of this thread
+            for (int l = 0; l < lists.size(); l++) {
+                int[] ids = lists.get(l);
+                for (int j = 0; j < lengths[l]; j++) {
+                    counts[ids[j]] = 0;
+                }
+            }
+            if (wasCancelled) {
+                return null;
+            }
+            Arrays.sort(found, 0, size);
+            return Arrays.copyOf(found, size);
+        }
+
+        private void remember(String lowerPattern, int[] docs) {
+            synchronized (recent) {
+                recent.removeIf(result -> result.query.equals(lowerPattern) && result.docCount <= docCount);
+                recent.addFirst(new Result(lowerPattern, docs, version, docCount));
+                if (recent.size() > RECENT_RESULTS) {
+                    recent.removeLast();
+                }
+            }
+        }
+
+        private List<T> beans(int[] docs, int size) {
+            List<T> result = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                @SuppressWarnings("unchecked")
+                T bean = (T) beans[docs[i]];
+                // null if removed since the snapshot
+                if (bean != null && !dead.get(docs[i])) {
+                    result.add(bean);
+                }
+            }
+            return result;
+        }
+
+        private boolean matches(int doc, String lowerPattern) {
+            String[] docLowerValues = lowerValues[doc];
+            if (docLowerValues == null) {
+                return false;
+            }
+            for (String value : docLowerValues) {
+                if (value.contains(lowerPattern)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return how well a document matches, 0 if it does not
+         */
+        private int score(int doc, String lowerPattern) {
+            return SearchIndex.score(names[doc], lowerValues[doc], lowerPattern, nameField);
+        }
+
+        /**
+         * The best matches seen so far, in a min-heap of {@code score << 32 | ~doc}, the worst at the root (the lowest
+         * score, then the latest document).
+         */
+        private final class Ranking {
+            private final long[] heap;
+            private int size = 0;
+
+            private Ranking(int limit) {
+                heap = new long[Math.max(0, Math.min(limit, docCount))];
+            }
+
+            private void offer(int doc, int score) {
+                long key = ((long) score << 32) | (~doc & 0xFFFFFFFFL);
+                if (size < heap.length) {
+                    int i = size++;
+                    while (i > 0 && heap[(i - 1) / 2] > key) {
+                        heap[i] = heap[(i - 1) / 2];
+                        i = (i - 1) / 2;
+                    }
+                    heap[i] = key;
+                } else if (size > 0 && key > heap[0]) {
+                    siftDown(key, size);
+                }
+            }
+
+            private void siftDown(long key, int length) {
+                int i = 0;
+                while (2 * i + 1 < length) {
+                    int child = 2 * i + 1;
+                    if (child + 1 < length && heap[child + 1] < heap[child]) {
+                        child++;
+                    }
+                    if (heap[child] >= key) {
+                        break;
+                    }
+                    heap[i] = heap[child];
+                    i = child;
+                }
+                heap[i] = key;
+            }
+
+            private boolean isFull() {
+                return size == heap.length;
+            }
+
+            private int worstScore() {
+                return size == 0 ? Integer.MAX_VALUE : (int) (heap[0] >>> 32);
+            }
+
+            private List<T> beans() {
+                // heap sort: the worst is moved to the end, leaving the best first
+                for (int end = size - 1; end > 0; end--) {
+                    long worst = heap[0];
+                    siftDown(heap[end], end);
+                    heap[end] = worst;
+                }
+                List<T> result = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    int doc = ~(int) heap[i];
+                    @SuppressWarnings("unchecked")
+                    T bean = (T) Snapshot.this.beans[doc];
+                    // null if removed since the snapshot
+                    if (bean != null) {
+                        result.add(bean);
+                    }
+                }
+                return result;
+            }
+        }
+
+        /**
+         * @param from the first document id to consider
+         * @return the sorted ids of the documents containing all the n-grams of the pattern
+         */
+        private int[] candidates(String lowerPattern, int from) {
+            if (lowerPattern.isEmpty()) {
+                return new int[0];
+            }
+            int n = Math.min(GRAM, lowerPattern.length());
+            Set<Long> grams = new LinkedHashSet<>();
+            for (int i = 0; i + n <= lowerPattern.length(); i++) {
+                grams.add(gram(lowerPattern, i, n));
+            }
+            List<int[]> lists = new ArrayList<>(grams.size());
+            List<Integer> lengths = new ArrayList<>(grams.size());
+            for (Long gram : grams) {
+                Postings list = postings.get(gram);
+                if (list == null) {
+                    return new int[0];
+                }
+                int length = list.size;
+                int[] ids = list.ids;
+                // ids appended after this snapshot are beyond its docCount
+                int visible = Arrays.binarySearch(ids, 0, length, docCount);
+                visible = visible >= 0 ? visible : -visible - 1;
+                if (from > 0) {
+                    int start = Arrays.binarySearch(ids, 0, visible, from);
+                    ids = Arrays.copyOfRange(ids, start >= 0 ? start : -start - 1, visible);
+                    visible = ids.length;
+                }
+                lists.add(ids);
+                lengths.add(visible);
+            }
+            return intersectAll(lists, lengths);
+        }
+
+        private int[] intersectAll(List<int[]> lists, List<Integer> lengths) {
+            // the most selective first, so that the intersection only ever shrinks from the smallest list
+            Integer[] order = new Integer[lists.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Integer.compare(lengths.get(a), lengths.get(b)));
+            int[] result = Arrays.copyOf(lists.get(order[0]), lengths.get(order[0]));
+            int size = result.length;
+            for (int l = 1; l < order.length && size > 0; l++) {
+                size = intersect(result, size, lists.get(order[l]), lengths.get(order[l]));
+            }
+            return size == result.length ? result : Arrays.copyOf(result, size);
+        }
+    }
+
+    /**
+     * A query with its values lowercased, and its fields resolved to their posting lists.
+     */
+    private static final class CompiledQuery {
+        private final List<CompiledTerm> positive = new ArrayList<>();
+        private final List<CompiledTerm> negative = new ArrayList<>();
+        // a positive term is scoped to a field no document has
+        private boolean impossible = false;
+
+        /**
+         * @param fieldPostings whether the scoped terms can use the posting lists of their field
+         */
+        private CompiledQuery(SearchQuery query, Map<String, Integer> fieldIds, boolean fieldPostings) {
+            for (SearchQuery.Term term : query.getTerms()) {
+                String field = term.getField() == null ? null : term.getField().toLowerCase();
+                Integer fieldId = field == null ? null : fieldIds.get(field);
+                if (field != null && fieldId == null) {
+                    impossible |= !term.isNegated();
+                    continue;
+                }
+                CompiledTerm compiled = new CompiledTerm(field, fieldId == null || !fieldPostings ? 0 : fieldKey(fieldId), term.getValue().toLowerCase());
+                (term.isNegated() ? negative : positive).add(compiled);
+            }
+        }
+
+        /**
+         * @return the sum of the scores of the positive terms, 0 if one of them does not match or a negative one does
+         */
+        private int score(String[] docNames, String[] docLowerValues, String nameField) {
+            if (impossible || docNames == null || docLowerValues == null) {
+                return 0;
+            }
+            for (CompiledTerm term : negative) {
+                for (int i = 0; i < docNames.length; i++) {
+                    if (term.matches(docNames[i], docLowerValues[i])) {
+                        return 0;
+                    }
+                }
+            }
+            int total = 0;
+            for (CompiledTerm term : positive) {
+                int best = 0;
+                boolean bestIsName = false;
+                int matched = 0;
+                for (int i = 0; i < docNames.length; i++) {
+                    if (term.matches(docNames[i], docLowerValues[i])) {
+                        String value = docLowerValues[i];
+                        int kind = value.equals(term.value) ? EXACT : value.startsWith(term.value) ? PREFIX : CONTAINS;
+                        matched++;
+                        boolean isName = docNames[i].equals(nameField);
+                        if (kind > best || kind == best && isName) {
+                            best = kind;
+                            bestIsName = isName;
+                        }
+                    }
+                }
+                if (matched == 0) {
+                    return 0;
+                }
+                // a field only matches once, whatever the case of its name
+                total += packScore(best, bestIsName, term.field == null ? matched : 1);
+            }
+            // only negative terms: all the documents they leave match the same
+            return positive.isEmpty() ? 1 : total;
+        }
+    }
+
+    private static final class CompiledTerm {
+        // lowercase, null for any field
+        private final String field;
+        private final long fieldKey;
+        private final String value;
+
+        private CompiledTerm(String field, long fieldKey, String value) {
+            this.field = field;
+            this.fieldKey = fieldKey;
+            this.value = value;
+        }
+
+        private boolean matches(String name, String lowerValue) {
+            return (field == null || field.equalsIgnoreCase(name)) && lowerValue.contains(value);
+        }
+
+        /**
+         * @return the keys of the posting lists of the n-grams of the value, in the field if it has its own
+         */
+        private Set<Long> grams() {
+            Set<Long> grams = new LinkedHashSet<>();
+            int n = Math.min(GRAM, value.length());
+            for (int i = 0; i + n <= value.length() && n > 0; i++) {
+                grams.add(fieldKey | gram(value, i, n));
+            }
+            return grams;
+        }
+    }
+
+    /**
+     * The matches of a recent query among the first {@code docCount} documents, valid until they are renumbered. The
+     * documents removed since are dead, and skipped by the searches reusing it.
+     */
+    private static final class Result {
+        private final String query;
+        private final int[] docs;
+        private final int version;
+        private final int docCount;
+
+        private Result(String query, int[] docs, int version, int docCount) {
+            this.query = query;
+            this.docs = docs;
+            this.version = version;
+            this.docCount = docCount;
+        }
+    }
+
+    /**
+     * A set of canonical strings, in an open-addressing table with linear probing: no entry object per string, unlike a
+     * {@code HashMap}. Only ever grows, a compaction replaces it.
+     */
+    private static final class StringPool {
+        private String[] table = new String[64];
+        private int size = 0;
+
+        private String intern(String s) {
+            int mask = table.length - 1;
+            int i = mix(s.hashCode()) & mask;
+            String candidate;
+            while ((candidate = table[i]) != null) {
+                if (candidate.equals(s)) {
+                    return candidate;
+                }
+                i = (i + 1) & mask;
+            }
+            table[i] = s;
+            if (++size * 3 > table.length * 2) {
+                grow();
+            }
+            return s;
+        }
+
+        private void grow() {
+            String[] old = table;
+            table = new String[2 * old.length];
+            int mask = table.length - 1;
+            for (String s : old) {
+                if (s != null) {
+                    int i = mix(s.hashCode()) & mask;
+                    while (table[i] != null) {
+                        i = (i + 1) & mask;
+                    }
+                    table[i] = s;
+                }
+            }
+        }
+
+        private static int mix(int hash) {
+            int h = hash * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+
+    /**
+     * A sorted, append-only list of document ids. The ids are written before the size, and a grown array is fully
+     * copied before it replaces the current one: a reader that reads the size first, then the array, sees at least
+     * that many ids.
+     */
+    private static final class Postings {
+        private volatile int[] ids;
+        private volatile int size;
+
+        private Postings() {
+            this(new int[4], 0);
+        }
+
+        private Postings(int[] ids, int size) {
+            this.ids = ids;
+            this.size = size;
+        }
+
+        private void add(int doc) {
+            int n = size;
+            int[] array = ids;
+            if (n > 0 && array[n - 1] == doc) {
+                return;
+            }
+            if (n == array.length) {
+                array = Arrays.copyOf(array, 2 * n);
+                ids = array;
+            }
+            array[n] = doc;
+            size = n + 1;
+        }
+
+        /**
+         * @return a new list, with the ids renumbered and the dead ones ({@code -1}) dropped
+         */
+        private Postings remap(int[] newIds) {
+            int n = size;
+            int[] array = ids;
+            int[] remapped = new int[Math.max(n, 4)];
+            int kept = 0;
+            for (int i = 0; i < n; i++) {
+                int id = newIds[array[i]];
+                if (id >= 0) {
+                    remapped[kept++] = id;
+                }
+            }
+            return new Postings(kept < remapped.length / 4 ? Arrays.copyOf(remapped, Math.max(kept, 4)) : remapped, kept);
+        }
+    }
+}
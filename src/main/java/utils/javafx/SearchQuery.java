@@ -0,0 +1,147 @@
+package utils.javafx;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A parsed search text, for {@link SearchIndex#search(SearchQuery, int)}: the terms all have to match (AND), a term
+ * can be scoped to one field with {@code field:value}, and negated with a leading {@code -}. A value with spaces can be
+ * quoted. For example {@code ccy:EUR -exchange:LSE "vodafone group"}.
+ * <p>
+ * A value matches a field containing it, ignoring case. Only a query made of a single plain term can be fuzzy.
+ */
+public final class SearchQuery {
+
+    private final List<Term> terms;
+    private final int maxEdits;
+
+    private SearchQuery(List<Term> terms, int maxEdits) {
+        this.terms = terms;
+        this.maxEdits = maxEdits;
+    }
+
+    /**
+     * @return the query searching the whole text in all the fields, as a single term
+     */
+    public static SearchQuery of(String pattern) {
+        return new SearchQuery(Collections.singletonList(new Term(null, pattern, false)), 0);
+    }
+
+    /**
+     * Parses a text with the query syntax. Never fails: a text without any syntax is a list of plain terms.
+     */
+    public static SearchQuery parse(String text) {
+        List<Term> terms = new ArrayList<>();
+        int i = 0;
+        int length = text.length();
+        while (i < length) {
+            if (Character.isWhitespace(text.charAt(i))) {
+                i++;
+                continue;
+            }
+            boolean negated = false;
+            if (text.charAt(i) == '-' && i + 1 < length && !Character.isWhitespace(text.charAt(i + 1))) {
+                negated = true;
+                i++;
+            }
+            String field = null;
+            int start = i;
+            while (i < length && !Character.isWhitespace(text.charAt(i)) && text.charAt(i) != ':' && text.charAt(i) != '"') {
+                i++;
+            }
+            if (i < length && text.charAt(i) == ':' && i > start) {
+                field = text.substring(start, i);
+                i++;
+                start = i;
+            } else {
+                i = start;
+            }
+            String value;
+            if (i < length && text.charAt(i) == '"') {
+                int end = text.indexOf('"', i + 1);
+                // an unfinished quote runs to the end of the text
+                value = text.substring(i + 1, end < 0 ? length : end);
+                i = end < 0 ? length : end + 1;
+            } else {
+                while (i < length && !Character.isWhitespace(text.charAt(i))) {
+                    i++;
+                }
+                value = text.substring(start, i);
+            }
+            terms.add(new Term(field, value, negated));
+        }
+        return new SearchQuery(Collections.unmodifiableList(terms), 0);
+    }
+
+    /**
+     * @return the same query, tolerating typos if it is made of a single plain term, see
+     * {@link SearchIndex#searchFuzzy(String, int, int)}
+     */
+    public SearchQuery withMaxEdits(int maxEdits) {
+        return new SearchQuery(terms, maxEdits);
+    }
+
+    public List<Term> getTerms() {
+        return terms;
+    }
+
+    public int getMaxEdits() {
+        return maxEdits;
+    }
+
+    /**
+     * @return whether this query is a single plain term, searched like a simple pattern
+     */
+    public boolean isSimple() {
+        return terms.size() == 1 && terms.get(0).field == null && !terms.get(0).negated;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (Term term : terms) {
+            if (builder.length() > 0) {
+                builder.append(' ');
+            }
+            builder.append(term);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * A value, that a bean must (or, negated, must not) have in one of its fields, or in the named one.
+     */
+    public static final class Term {
+        private final String field;
+        private final String value;
+        private final boolean negated;
+
+        private Term(String field, String value, boolean negated) {
+            this.field = field;
+            this.value = value;
+            this.negated = negated;
+        }
+
+        /**
+         * @return the name of the field the value has to be in, null for any field
+         */
+        public String getField() {
+            return field;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public boolean isNegated() {
+            return negated;
+        }
+
+        @Override
+        public String toString() {
+            String quoted = value.isEmpty() || value.chars().anyMatch(Character::isWhitespace) ? '"' + value + '"' : value;
+            return (negated ? "-" : "") + (field == null ? "" : field + ":") + quoted;
+        }
+    }
+}
@@ -1,46 +1,79 @@
 package utils.javafx;
 
-import javafx.beans.binding.DoubleBinding;
 import javafx.beans.binding.NumberExpression;
-import javafx.beans.value.ObservableNumberValue;
-import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Collections;
 import java.util.function.Function;
 
 /**
  * Created by mac on 09/04/2016.
  */
-public class SumDoubleProperties<E> extends DoubleBinding {
+public class SumDoubleProperties<E> extends AggregateBinding<E> {
 
-    Map<E, NumberExpression> itemsToSum = new HashMap<>();
+    /**
+     * How the sum reacts to the change of one of its items.
+     */
+    public enum Mode {
+        /**
+         * Every invalidation re-sums all the items, O(N).
+         */
+        RESCAN,
+        /**
+         * A running total is kept and only the items that have changed since the last evaluation are applied to it,
+         * as a delta. A full re-sum only happens on {@link #recompute()} or every
+         * {@link #setDriftCorrectionInterval(int) driftCorrectionInterval} deltas. The running total is accumulated
+         * with the {@link Summation} given at construction.
+         */
+        INCREMENTAL
+    }
+
+    private final Mode mode;
+    private final RunningSum total;
 
     public SumDoubleProperties(ObservableList<E> items, Function<E, NumberExpression> extractor) {
-        items.forEach(o -> itemsToSum.put(o, addNew(extractor.apply(o))));
-        items.addListener((ListChangeListener<? super E>) change -> {
-            while(change.next()) {
-                change.getRemoved().forEach(o -> remove(itemsToSum.remove(o)));
-                change.getAddedSubList().forEach(o -> itemsToSum.put(o, addNew(extractor.apply(o))));
-                if(change.wasAdded() || change.wasRemoved() || change.wasUpdated()) {
-                    invalidate();
-                }
-            }
-        });
+        this(items, extractor, Mode.RESCAN);
+    }
+
+    public SumDoubleProperties(ObservableList<E> items, Function<E, NumberExpression> extractor, Mode mode) {
+        this(items, extractor, mode, Summation.PLAIN);
+    }
+
+    /**
+     * @param summation how the running total of {@link Mode#INCREMENTAL} mode is accumulated. {@link Mode#RESCAN} always
+     *                  sums {@link Summation#COMPENSATED}, like {@link java.util.stream.DoubleStream#sum()} does.
+     */
+    public SumDoubleProperties(ObservableList<E> items, Function<E, NumberExpression> extractor, Mode mode, Summation summation) {
+        super(items, mode == Mode.INCREMENTAL, Collections.singletonList(extractor));
+        this.mode = mode;
+        this.total = new RunningSum(mode == Mode.INCREMENTAL ? summation : Summation.COMPENSATED);
+    }
+
+    public Mode getMode() {
+        return mode;
     }
 
-    private NumberExpression addNew(NumberExpression expr) {
-        bind(expr);
-        return expr;
+    public Summation getSummation() {
+        return total.getSummation();
     }
 
-    private void remove(NumberExpression expr) {
-        unbind(expr);
+    @Override
+    protected void clear() {
+        total.reset();
+    }
+
+    @Override
+    protected void include(Item item) {
+        total.add(item.value(0));
+    }
+
+    @Override
+    protected void exclude(Item item) {
+        total.remove(item.value(0));
     }
 
     @Override
-    protected double computeValue() {
-        return itemsToSum.values().stream().mapToDouble(ObservableNumberValue::doubleValue).sum();
+    protected double aggregate() {
+        return total.get();
     }
 }
@@ -0,0 +1,16 @@
+package utils.javafx;
+
+/**
+ * The algorithm used to accumulate a running total that values are both added to and removed from.
+ */
+public enum Summation {
+    /**
+     * Plain floating-point additions: cheapest, but the rounding errors of every delta pile up over long sessions.
+     */
+    PLAIN,
+    /**
+     * Neumaier's variant of Kahan summation: the low-order bits lost by each addition are carried in a separate
+     * compensation term, so the error stays in the order of one ulp of the total whatever the number of deltas.
+     */
+    COMPENSATED
+}
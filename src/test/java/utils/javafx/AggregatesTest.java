@@ -0,0 +1,145 @@
+package utils.javafx;
+
+import javafx.beans.binding.DoubleExpression;
+import javafx.beans.property.DoubleProperty;
+import javafx.beans.property.SimpleDoubleProperty;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class AggregatesTest {
+
+    class Fill {
+        DoubleProperty price = new SimpleDoubleProperty(0);
+        DoubleProperty qty = new SimpleDoubleProperty(0);
+
+        public Fill(double price, double qty) {
+            this.price.set(price);
+            this.qty.set(qty);
+        }
+
+        public DoubleProperty priceProperty() {
+            return price;
+        }
+
+        public DoubleProperty qtyProperty() {
+            return qty;
+        }
+    }
+
+    @Test
+    public void testAggregates() throws Exception {
+
+        ObservableList<Fill> fills = FXCollections.observableArrayList();
+
+        DoubleExpression count = Aggregates.count(fills);
+        DoubleExpression mean = Aggregates.mean(fills, Fill::priceProperty);
+        DoubleExpression vwap = Aggregates.weightedMean(fills, Fill::priceProperty, Fill::qtyProperty);
+        DoubleExpression min = Aggregates.min(fills, Fill::priceProperty);
+        DoubleExpression max = Aggregates.max(fills, Fill::priceProperty);
+
+        assertEquals(0., count.get(), 1e-6);
+        assertEquals(Double.NaN, mean.get(), 1e-6);
+        assertEquals(Double.NaN, min.get(), 1e-6);
+        assertEquals(Double.NaN, max.get(), 1e-6);
+
+        fills.add(new Fill(10., 100.));
+        fills.add(new Fill(12., 300.));
+        assertEquals(2., count.get(), 1e-6);
+        assertEquals(11., mean.get(), 1e-6);
+        assertEquals(11.5, vwap.get(), 1e-6);
+        assertEquals(10., min.get(), 1e-6);
+        assertEquals(12., max.get(), 1e-6);
+
+        fills.get(0).price.set(13.);
+        assertEquals(12.5, mean.get(), 1e-6);
+        assertEquals(12.25, vwap.get(), 1e-6);
+        assertEquals(12., min.get(), 1e-6);
+        assertEquals(13., max.get(), 1e-6);
+
+        fills.get(1).price.set(Double.NaN);
+        assertEquals(Double.NaN, min.get(), 1e-6);
+        assertEquals(Double.NaN, max.get(), 1e-6);
+        fills.remove(1);
+        assertEquals(1., count.get(), 1e-6);
+        assertEquals(13., vwap.get(), 1e-6);
+        assertEquals(13., min.get(), 1e-6);
+        assertEquals(13., max.get(), 1e-6);
+
+        fills.clear();
+        assertEquals(0., count.get(), 1e-6);
+        assertEquals(Double.NaN, vwap.get(), 1e-6);
+        assertEquals(Double.NaN, max.get(), 1e-6);
+    }
+
+    @Test
+    public void testDuplicates() throws Exception {
+
+        ObservableList<Fill> fills = FXCollections.observableArrayList();
+        DoubleExpression count = Aggregates.count(fills);
+        DoubleExpression mean = Aggregates.mean(fills, Fill::priceProperty);
+        DoubleExpression min = Aggregates.min(fills, Fill::priceProperty);
+
+        Fill fill = new Fill(10., 100.);
+        fills.addAll(fill, fill, new Fill(16., 100.));
+        assertEquals(3., count.get(), 1e-6);
+        assertEquals(12., mean.get(), 1e-6);
+        assertEquals(10., min.get(), 1e-6);
+
+        fill.price.set(13.);
+        assertEquals(14., mean.get(), 1e-6);
+
+        fills.remove(0);
+        assertEquals(2., count.get(), 1e-6);
+        assertEquals(14.5, mean.get(), 1e-6);
+        assertEquals(13., min.get(), 1e-6);
+
+        fills.remove(fill);
+        assertEquals(1., count.get(), 1e-6);
+        assertEquals(16., mean.get(), 1e-6);
+        assertEquals(16., min.get(), 1e-6);
+    }
+
+    @Test
+    public void testRandomUpdates() throws Exception {
+
+        ObservableList<Fill> fills = FXCollections.observableArrayList();
+        AggregateBinding<Fill> mean = Aggregates.mean(fills, Fill::priceProperty, Summation.COMPENSATED);
+        AggregateBinding<Fill> vwap = Aggregates.weightedMean(fills, Fill::priceProperty, Fill::qtyProperty, Summation.COMPENSATED);
+        AggregateBinding<Fill> min = Aggregates.min(fills, Fill::priceProperty);
+        AggregateBinding<Fill> max = Aggregates.max(fills, Fill::priceProperty);
+
+        Random random = new Random(42L);
+        for (int i = 0; i < 20000; i++) {
+            int action = random.nextInt(10);
+            if (action == 0 || fills.size() < 10) {
+                fills.add(random.nextInt(fills.size() + 1), new Fill(random.nextInt(1000) / 10., 1 + random.nextInt(100)));
+            } else if (action == 1) {
+                fills.remove(random.nextInt(fills.size()));
+            } else if (action < 6) {
+                fills.get(random.nextInt(fills.size())).price.set(random.nextInt(1000) / 10.);
+            } else {
+                fills.get(random.nextInt(fills.size())).qty.set(1 + random.nextInt(100));
+            }
+
+            if (i % 7 == 0) {
+                double sum = 0., weighted = 0., weights = 0., lowest = Double.POSITIVE_INFINITY, highest = Double.NEGATIVE_INFINITY;
+                for (Fill fill : fills) {
+                    sum += fill.price.get();
+                    weighted += fill.price.get() * fill.qty.get();
+                    weights += fill.qty.get();
+                    lowest = Math.min(lowest, fill.price.get());
+                    highest = Math.max(highest, fill.price.get());
+                }
+                assertEquals(sum / fills.size(), mean.get(), 1e-9);
+                assertEquals(weighted / weights, vwap.get(), 1e-9);
+                assertEquals(lowest, min.get(), 0.);
+                assertEquals(highest, max.get(), 0.);
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package utils.javafx;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BackgroundSumTest {
+
+    @Test
+    public void testConcurrentUpdates() throws Exception {
+
+        ScheduledExecutorService executor = new ScheduledThreadPoolExecutor(1);
+        List<Runnable> fxQueue = new ArrayList<>();
+        // drains every millisecond while the feeds are running
+        BackgroundSum<Integer> sum = new BackgroundSum<>(executor, 1000, runnable -> {
+            synchronized (fxQueue) {
+                fxQueue.add(runnable);
+            }
+        }, Summation.COMPENSATED);
+
+        int threads = 4;
+        int keysPerThread = 100;
+        double[] finalValues = new double[threads * keysPerThread];
+        List<Thread> feeds = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int first = t * keysPerThread;
+            Thread feed = new Thread(() -> {
+                Random random = new Random(first);
+                for (int i = 0; i < 50_000; i++) {
+                    int key = first + random.nextInt(keysPerThread);
+                    double value = random.nextInt(10_000) / 100.;
+                    if (random.nextInt(20) == 0) {
+                        sum.remove(key);
+                        value = 0.;
+                    } else {
+                        sum.set(key, value);
+                    }
+                    finalValues[key] = value;
+                }
+            });
+            feeds.add(feed);
+            feed.start();
+        }
+        for (Thread feed : feeds) {
+            feed.join();
+        }
+        sum.close();
+        executor.shutdown();
+        sum.drain();
+
+        double expected = 0.;
+        for (double value : finalValues) {
+            expected += value;
+        }
+
+        synchronized (fxQueue) {
+            assertTrue(fxQueue.size() <= 1);
+            fxQueue.forEach(Runnable::run);
+        }
+        assertEquals(expected, sum.getTotal(), 1e-6);
+        assertEquals(threads * 50_000, sum.getUpdateCount());
+        assertTrue(sum.getPublicationCount() <= 1);
+    }
+
+    @Test
+    public void testConflation() throws Exception {
+
+        List<Runnable> fxQueue = new ArrayList<>();
+        BackgroundSum<String> sum = new BackgroundSum<>(new ScheduledThreadPoolExecutor(1), 0, fxQueue::add, Summation.PLAIN);
+
+        sum.set("a", 1.);
+        sum.set("a", 2.);
+        sum.set("b", 3.);
+        sum.remove("b");
+        sum.set("c", 5.);
+        assertEquals(2, sum.getConflatedCount());
+
+        sum.drain();
+        assertEquals(0., sum.getTotal(), 0.);
+        assertEquals(1, fxQueue.size());
+        fxQueue.remove(0).run();
+        assertEquals(7., sum.getTotal(), 0.);
+
+        sum.set("c", 5.);
+        sum.drain();
+        assertEquals(0, fxQueue.size());
+
+        sum.remove("a");
+        sum.remove("c");
+        sum.drain();
+        fxQueue.remove(0).run();
+        assertEquals(0., sum.getTotal(), 0.);
+        assertEquals(2, sum.getPublicationCount());
+    }
+}
@@ -0,0 +1,74 @@
+package utils.javafx;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FuzzyPatternTest {
+
+    /**
+     * The textbook dynamic programming, with a free start and end in the text.
+     */
+    static int distance(String pattern, String text) {
+        int[] previous = new int[pattern.length() + 1];
+        int[] current = new int[pattern.length() + 1];
+        for (int i = 0; i <= pattern.length(); i++) {
+            previous[i] = i;
+        }
+        int best = pattern.length();
+        for (int j = 1; j <= text.length(); j++) {
+            current[0] = 0;
+            for (int i = 1; i <= pattern.length(); i++) {
+                int substitution = previous[i - 1] + (pattern.charAt(i - 1) == text.charAt(j - 1) ? 0 : 1);
+                current[i] = Math.min(substitution, Math.min(previous[i], current[i - 1]) + 1);
+            }
+            best = Math.min(best, current[pattern.length()]);
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return best;
+    }
+
+    @Test
+    public void testDistance() throws Exception {
+
+        FuzzyPattern vodafone = new FuzzyPattern("vodafone", 2);
+        assertEquals(0, vodafone.distance("vodafone group"));
+        assertEquals(2, vodafone.distance("vodafnoe"));
+        assertEquals(1, vodafone.distance("the vodafine"));
+        assertEquals(2, vodafone.distance("the vodaphone"));
+        assertTrue(vodafone.matches("vodafnoe"));
+        assertFalse(vodafone.matches("volkswagen"));
+        assertEquals(8, vodafone.distance(""));
+
+        FuzzyPattern accents = new FuzzyPattern("soci\u00e9t\u00e9", 1);
+        assertEquals(0, accents.distance("la soci\u00e9t\u00e9 g\u00e9n\u00e9rale"));
+        assertEquals(1, accents.distance("soci\u00e9te"));
+        assertEquals(2, accents.distance("societe"));
+    }
+
+    @Test
+    public void testRandom() throws Exception {
+
+        Random random = new Random(5);
+        String alphabet = "abcd\u00e9";
+        for (int run = 0; run < 2000; run++) {
+            String pattern = randomString(random, alphabet, 1 + random.nextInt(run % 10 == 0 ? 64 : 8));
+            String text = randomString(random, alphabet, random.nextInt(30));
+            assertEquals(pattern + " in " + text, distance(pattern, text), new FuzzyPattern(pattern, 1).distance(text));
+        }
+    }
+
+    private static String randomString(Random random, String alphabet, int length) {
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,131 @@
+package utils.javafx;
+
+import javafx.beans.Observable;
+import javafx.beans.property.DoubleProperty;
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.SimpleDoubleProperty;
+import javafx.beans.property.SimpleObjectProperty;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class GroupedSumTest {
+
+    class Position {
+        ObjectProperty<String> basket = new SimpleObjectProperty<>();
+        DoubleProperty notional = new SimpleDoubleProperty();
+
+        public Position(String basket, double notional) {
+            this.basket.set(basket);
+            this.notional.set(notional);
+        }
+
+        public String getBasket() {
+            return basket.get();
+        }
+
+        public DoubleProperty notionalProperty() {
+            return notional;
+        }
+    }
+
+    @Test
+    public void testGroups() throws Exception {
+
+        ObservableList<Position> positions = FXCollections.observableArrayList(param -> new Observable[] {param.basket});
+        GroupedSum<Position, String> sums = new GroupedSum<>(positions, Position::getBasket, Position::notionalProperty);
+
+        Position p1 = new Position("EU", 100.);
+        Position p2 = new Position("EU", 200.);
+        Position p3 = new Position("US", 50.);
+        positions.addAll(p1, p2, p3);
+
+        assertEquals(2, sums.getTotals().size());
+        assertEquals(300., sums.getTotal("EU").get(), 1e-6);
+        assertEquals(50., sums.getTotals().get("US").get(), 1e-6);
+
+        p1.notional.set(150.);
+        assertEquals(350., sums.getTotal("EU").get(), 1e-6);
+        assertEquals(50., sums.getTotal("US").get(), 1e-6);
+
+        p2.basket.set("US");
+        assertEquals(150., sums.getTotal("EU").get(), 1e-6);
+        assertEquals(250., sums.getTotal("US").get(), 1e-6);
+
+        p2.notional.set(0.);
+        assertEquals(150., sums.getTotal("EU").get(), 1e-6);
+        assertEquals(50., sums.getTotal("US").get(), 1e-6);
+
+        p1.basket.set("ASIA");
+        assertFalse(sums.getTotals().containsKey("EU"));
+        assertNull(sums.getTotal("EU"));
+        assertEquals(150., sums.getTotal("ASIA").get(), 1e-6);
+
+        positions.remove(p3);
+        assertEquals(0., sums.getTotal("US").get(), 1e-6);
+        positions.remove(p2);
+        assertEquals(1, sums.getTotals().size());
+    }
+
+    @Test
+    public void testDuplicates() throws Exception {
+
+        ObservableList<Position> positions = FXCollections.observableArrayList(param -> new Observable[] {param.basket});
+        GroupedSum<Position, String> sums = new GroupedSum<>(positions, Position::getBasket, Position::notionalProperty);
+
+        Position p1 = new Position("EU", 100.);
+        positions.addAll(p1, p1, new Position("EU", 50.));
+        assertEquals(250., sums.getTotal("EU").get(), 1e-6);
+
+        p1.notional.set(120.);
+        assertEquals(290., sums.getTotal("EU").get(), 1e-6);
+
+        p1.basket.set("US");
+        assertEquals(50., sums.getTotal("EU").get(), 1e-6);
+        assertEquals(240., sums.getTotal("US").get(), 1e-6);
+
+        // removing one copy keeps the other one in its group
+        positions.remove(0);
+        assertEquals(120., sums.getTotal("US").get(), 1e-6);
+        positions.remove(p1);
+        assertNull(sums.getTotal("US"));
+        assertEquals(50., sums.getTotal("EU").get(), 1e-6);
+    }
+
+    @Test
+    public void testRandomMoves() throws Exception {
+
+        String[] baskets = {"A", "B", "C", "D"};
+        ObservableList<Position> positions = FXCollections.observableArrayList(param -> new Observable[] {param.basket});
+        GroupedSum<Position, String> sums = new GroupedSum<>(positions, Position::getBasket, Position::notionalProperty, Summation.COMPENSATED);
+
+        Random random = new Random(7L);
+        for (int i = 0; i < 5000; i++) {
+            int action = random.nextInt(6);
+            if (action == 0 || positions.size() < 5) {
+                positions.add(new Position(baskets[random.nextInt(baskets.length)], random.nextInt(100)));
+            } else if (action == 1) {
+                positions.remove(random.nextInt(positions.size()));
+            } else if (action == 2) {
+                positions.get(random.nextInt(positions.size())).basket.set(baskets[random.nextInt(baskets.length)]);
+            } else {
+                positions.get(random.nextInt(positions.size())).notional.set(random.nextInt(100));
+            }
+
+            if (i % 3 == 0) {
+                Map<String, Double> expected = new HashMap<>();
+                positions.forEach(p -> expected.merge(p.getBasket(), p.notional.get(), Double::sum));
+                assertEquals(expected.keySet(), sums.getTotals().keySet());
+                expected.forEach((basket, total) -> assertEquals(total, sums.getTotal(basket).get(), 1e-9));
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package utils.javafx;
+
+import javafx.beans.binding.DoubleExpression;
+import org.junit.Test;
+import org.pmw.tinylog.Logger;
+
+import java.time.LocalDate;
+import java.util.Currency;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class HistoricalFxRatesTest {
+
+    private static final Currency USD = Currency.getInstance("USD");
+    private static final Currency EUR = Currency.getInstance("EUR");
+    private static final Currency GBP = Currency.getInstance("GBP");
+    private static final Currency CHF = Currency.getInstance("CHF");
+    private static final LocalDate START = LocalDate.of(2016, 1, 1);
+
+    @Test
+    public void testAsOf() throws Exception {
+
+        HistoricalFxRates rates = new HistoricalFxRates(USD);
+        rates.setRate(EUR, START.plusDays(10), 1.10);
+        rates.setRate(EUR, START, 1.08);
+        rates.setRate(EUR, START.plusDays(20), 1.12);
+        rates.setRate(GBP, START, 1.50);
+
+        assertEquals(1.08, rates.getRate(EUR, USD, START), 1e-12);
+        assertEquals(1.08, rates.getRate(EUR, USD, START.plusDays(9)), 1e-12);
+        assertEquals(1.10, rates.getRate(EUR, USD, START.plusDays(10)), 1e-12);
+        assertEquals(1.12, rates.getRate(EUR, USD, START.plusDays(400)), 1e-12);
+        assertEquals(1. / 1.10, rates.getRate(USD, EUR, START.plusDays(15)), 1e-12);
+        assertEquals(1.10 / 1.50, rates.getRate(EUR, GBP, START.plusDays(15)), 1e-12);
+        assertEquals(1., rates.getRate(CHF, CHF, START), 0.);
+
+        // replacing a fixing is seen by the next lookups, cached or not
+        rates.setRate(EUR, START.plusDays(10), 1.11);
+        assertEquals(1.11, rates.getRate(EUR, USD, START.plusDays(15)), 1e-12);
+
+        try {
+            rates.getRate(EUR, USD, START.minusDays(1));
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            rates.getRate(CHF, USD, START);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        HistoricalFxRates previous = Money.getHistoricalRates();
+        Money.setHistoricalRates(rates);
+        try {
+            DoubleExpression value = new Money(100, EUR).inCurrency(GBP, START.plusDays(25));
+            assertEquals(100 * 1.12 / 1.50, value.get(), 1e-9);
+            assertEquals(MoneyValue.of(108, USD), MoneyValue.of(100, EUR).convert(USD, START.plusDays(1)));
+        } finally {
+            Money.setHistoricalRates(previous);
+        }
+    }
+
+    @Test
+    public void testBulkRevaluation() throws Exception {
+
+        Currency[] currencies = {EUR, GBP, CHF, Currency.getInstance("JPY")};
+        HistoricalFxRates rates = new HistoricalFxRates(USD);
+        Random random = new Random(3);
+        for (Currency ccy : currencies) {
+            for (int day = 0; day < 3650; day++) {
+                if (random.nextInt(7) < 5) {
+                    rates.setRate(ccy, START.plusDays(day), .5 + random.nextDouble());
+                }
+            }
+            rates.setRate(ccy, START, 1.);
+        }
+
+        // a month of fills
+        int n = 1_000_000;
+        double[] amounts = new double[n];
+        int[] from = new int[n];
+        int[] days = new int[n];
+        int firstDay = (int) START.plusDays(3000).toEpochDay();
+        for (int i = 0; i < n; i++) {
+            amounts[i] = random.nextInt(100_000);
+            from[i] = CurrencyIndex.ordinal(currencies[random.nextInt(currencies.length)]);
+            days[i] = firstDay + random.nextInt(30);
+        }
+        double[] result = new double[n];
+        int usd = CurrencyIndex.ordinal(USD);
+        rates.convert(amounts, from, days, usd, result);
+
+        long start = System.nanoTime();
+        rates.convert(amounts, from, days, usd, result);
+        Logger.info("Revalued " + n + " fills in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+
+        for (int i = 0; i < n; i += 997) {
+            Currency ccy = CurrencyIndex.currency(from[i]);
+            assertEquals(amounts[i] * rates.getRate(ccy, USD, LocalDate.ofEpochDay(days[i])), result[i], 1e-9);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package utils.javafx;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MatchStateTest {
+
+    @Test
+    public void testGenerations() throws Exception {
+
+        MatchState<String, List<String>> state = new MatchState<>(ArrayList::new);
+
+        state.beginGeneration();
+        List<String> vod = state.stamp("vod");
+        state.stamp("vow");
+        state.endGeneration();
+        assertEquals(2, state.size());
+
+        // "vod" stays in the results and keeps its state, "vow" leaves them
+        state.beginGeneration();
+        assertSame(vod, state.stamp("vod"));
+        state.stamp("bp");
+        state.endGeneration();
+        assertEquals(2, state.size());
+        assertNull(state.get("vow"));
+        assertEquals(1, state.getEvictionCount());
+
+        assertTrue(state.evict("bp"));
+        assertFalse(state.evict("bp"));
+        assertEquals(1, state.size());
+
+        state.clear();
+        assertEquals(0, state.size());
+        assertEquals(3, state.getEvictionCount());
+    }
+
+    @Test
+    public void testBoundedFootprint() throws Exception {
+
+        MatchState<Integer, List<String>> state = new MatchState<>(ArrayList::new);
+        for (int query = 0; query < 1000; query++) {
+            state.beginGeneration();
+            for (int i = 0; i < 50; i++) {
+                state.stamp(query * 10 + i);
+            }
+            state.endGeneration();
+            assertEquals(50, state.size());
+        }
+    }
+}
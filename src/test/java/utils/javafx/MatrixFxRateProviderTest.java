@@ -0,0 +1,181 @@
+package utils.javafx;
+
+import javafx.application.Platform;
+import javafx.beans.binding.DoubleBinding;
+import javafx.beans.binding.DoubleExpression;
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.SimpleObjectProperty;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MatrixFxRateProviderTest {
+
+    private static final Currency USD = Currency.getInstance("USD");
+    private static final Currency EUR = Currency.getInstance("EUR");
+    private static final Currency GBP = Currency.getInstance("GBP");
+    private static final Currency JPY = Currency.getInstance("JPY");
+    private static final Currency CHF = Currency.getInstance("CHF");
+    private static final Currency SEK = Currency.getInstance("SEK");
+    private static final Currency NOK = Currency.getInstance("NOK");
+    private static final Currency DKK = Currency.getInstance("DKK");
+
+    @Test
+    public void testTriangulation() throws Exception {
+
+        MatrixFxRateProvider rates = new MatrixFxRateProvider(USD);
+        rates.setRate(EUR, USD, 1.2);
+        rates.setRate(GBP, USD, 1.5);
+        rates.setRate(USD, JPY, 100.);
+
+        assertEquals(1., rates.getRate(CHF, CHF), 0.);
+        assertEquals(1.2, rates.getRate(EUR, USD), 1e-12);
+        assertEquals(1. / 1.2, rates.getRate(USD, EUR), 1e-12);
+        assertEquals(1.2 / 1.5, rates.getRate(EUR, GBP), 1e-12);
+        assertEquals(120., rates.getRate(EUR, JPY), 1e-9);
+        assertEquals(1. / 150., rates.getRate(JPY, GBP), 1e-12);
+
+        // a direct quote wins over the triangulation, for the pair and its inverse
+        rates.setRate(EUR, GBP, .85);
+        assertEquals(.85, rates.getRate(EUR, GBP), 1e-12);
+        assertEquals(1. / .85, rates.getRate(GBP, EUR), 1e-12);
+        assertEquals(120., rates.getRate(EUR, JPY), 1e-9);
+
+        int eur = CurrencyIndex.ordinal(EUR);
+        int jpy = CurrencyIndex.ordinal(JPY);
+        assertEquals(EUR, CurrencyIndex.currency(eur));
+        assertEquals(120., rates.getRate(eur, jpy), 1e-9);
+
+        try {
+            rates.getRate(CHF, EUR);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("CHF"));
+        }
+    }
+
+    @Test
+    public void testSharedNumericCodes() throws Exception {
+
+        // XFO and XFU both have numeric code 0, YUM and CSD both have 891
+        for (String[] pair : new String[][]{{"XFO", "XFU"}, {"YUM", "CSD"}}) {
+            Currency first = Currency.getInstance(pair[0]);
+            Currency second = Currency.getInstance(pair[1]);
+            int ordinal = CurrencyIndex.ordinal(first);
+            int other = CurrencyIndex.ordinal(second);
+            assertTrue(ordinal != other);
+            assertEquals(first, CurrencyIndex.currency(ordinal));
+            assertEquals(second, CurrencyIndex.currency(other));
+            assertEquals(ordinal, CurrencyIndex.ordinal(first));
+            assertEquals(other, CurrencyIndex.ordinal(second));
+        }
+    }
+
+    @Test
+    public void testDefaultRates() throws Exception {
+        assertEquals(1.2, Money.getFixedRate(EUR, USD), 1e-12);
+        assertEquals(1. / 1.2, Money.getFixedRate(USD, EUR), 1e-12);
+        assertEquals(1., Money.getFixedRate(CHF, CHF), 0.);
+    }
+
+    @Test
+    public void testBatchUpdate() throws Exception {
+
+        // currencies no other test converts, so that no binding left over by them is counted
+        MatrixFxRateProvider rates = new MatrixFxRateProvider(USD);
+        rates.setRate(SEK, USD, 1.2);
+        rates.setRate(NOK, USD, 1.5);
+        rates.setRate(USD, DKK, 100.);
+
+        FxRateProvider previous = Money.getRateProvider();
+        Money.setRateProvider(rates);
+        Money.setFxExecutor(Runnable::run);
+        try {
+            ObjectProperty<Currency> reportCcy = new SimpleObjectProperty<>(USD);
+            ObservableList<Money> book = FXCollections.observableArrayList();
+            for (int i = 0; i < 100; i++) {
+                book.add(new Money(1, i % 2 == 0 ? SEK : NOK));
+            }
+            Money total = Money.sum(book, money -> money, reportCcy);
+            DoubleExpression sekDkk = Money.getRate(SEK, DKK);
+            DoubleExpression nokDkk = Money.getRate(NOK, DKK);
+            assertEquals(50 * 1.2 + 50 * 1.5, total.getAmount().doubleValue(), 1e-9);
+            assertEquals(120., sekDkk.doubleValue(), 1e-9);
+            assertEquals(150., nokDkk.doubleValue(), 1e-9);
+
+            int[] invalidations = new int[1];
+            total.amountProperty().addListener(observable -> invalidations[0]++);
+
+            // SEK/USD and SEK/DKK change, NOK/USD and NOK/DKK don't
+            int invalidated = rates.beginUpdate()
+                    .setRate(SEK, USD, 1.25)
+                    .setRate(NOK, USD, 1.5)
+                    .commit();
+            assertEquals(2, invalidated);
+            assertEquals(1, invalidations[0]);
+            assertEquals(50 * 1.25 + 50 * 1.5, total.getAmount().doubleValue(), 1e-9);
+            assertEquals(125., sekDkk.doubleValue(), 1e-9);
+            assertEquals(150., nokDkk.doubleValue(), 1e-9);
+
+            total.getAmount();
+            rates.beginUpdate()
+                    .setRate(SEK, USD, 1.1)
+                    .setRate(NOK, USD, 1.4)
+                    .setRate(USD, DKK, 110.)
+                    .commit();
+            assertEquals(2, invalidations[0]);
+            assertEquals(50 * 1.1 + 50 * 1.4, total.getAmount().doubleValue(), 1e-9);
+            assertEquals(121., sekDkk.doubleValue(), 1e-9);
+            assertEquals(154., nokDkk.doubleValue(), 1e-9);
+        } finally {
+            Money.setRateProvider(previous);
+            Money.setFxExecutor(Platform::runLater);
+        }
+    }
+
+    @Test
+    public void testDeferredInvalidation() throws Exception {
+
+        MatrixFxRateProvider rates = new MatrixFxRateProvider(USD);
+        rates.setRate(SEK, USD, .1);
+
+        FxRateProvider previous = Money.getRateProvider();
+        List<Runnable> fxQueue = new ArrayList<>();
+        Money.setRateProvider(rates);
+        Money.setFxExecutor(fxQueue::add);
+        try {
+            ObjectProperty<Currency> reportCcy = new SimpleObjectProperty<>(USD);
+            DoubleExpression rate = Money.getRate(SEK, reportCcy);
+            assertEquals(.1, rate.doubleValue(), 1e-12);
+
+            // committed off the FX thread: nothing is invalidated until the FX thread runs the invalidation, but the
+            // binding about to be is counted
+            assertEquals(1, rates.setRate(SEK, USD, .2));
+            assertEquals(1, fxQueue.size());
+            assertTrue(((DoubleBinding) rate).isValid());
+            fxQueue.remove(0).run();
+            assertFalse(((DoubleBinding) rate).isValid());
+            assertEquals(.2, rate.doubleValue(), 1e-12);
+
+            // replacing the provider keeps the executor
+            MatrixFxRateProvider replacement = new MatrixFxRateProvider(USD);
+            replacement.setRate(SEK, USD, .3);
+            Money.setRateProvider(replacement);
+            assertEquals(.3, rate.doubleValue(), 1e-12);
+            assertEquals(1, replacement.setRate(SEK, USD, .4));
+            assertEquals(1, fxQueue.size());
+        } finally {
+            Money.setRateProvider(previous);
+            Money.setFxExecutor(Platform::runLater);
+        }
+    }
+}
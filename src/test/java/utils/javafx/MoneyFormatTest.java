@@ -0,0 +1,66 @@
+package utils.javafx;
+
+import javafx.beans.binding.StringExpression;
+import javafx.beans.property.DoubleProperty;
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.SimpleDoubleProperty;
+import javafx.beans.property.SimpleObjectProperty;
+import org.junit.Test;
+
+import java.util.Currency;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class MoneyFormatTest {
+
+    private static final Currency USD = Currency.getInstance("USD");
+    private static final Currency EUR = Currency.getInstance("EUR");
+
+    private static void check(String format, Locale locale, double amount) {
+        String expected = String.format(locale, format + "%s", amount, USD.getSymbol(locale));
+        assertEquals(format + " " + amount, expected, MoneyFormat.get(format, USD, locale).format(amount));
+    }
+
+    @Test
+    public void testSameAsStringFormat() throws Exception {
+
+        String[] formats = {"%.2f", "%.0f ", "%f", "(%.4f) ", "%,.2f", "%10.3f"};
+        Locale[] locales = {Locale.US, Locale.FRANCE};
+        double[] specials = {0., -0., -0.001, .005, 1.005, 2.675, .125, -.125, 1e14 + .5, 1e20, -1e300, 4.35,
+                Double.MIN_VALUE, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        Random random = new Random(11);
+        for (String format : formats) {
+            for (Locale locale : locales) {
+                for (double amount : specials) {
+                    check(format, locale, amount);
+                }
+                for (int i = 0; i < 5_000; i++) {
+                    check(format, locale, (random.nextInt(2_000_000) - 1_000_000) / 1000.);
+                    check(format, locale, (random.nextDouble() - .5) * Math.pow(10, random.nextInt(14)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testBinding() throws Exception {
+
+        assertSame(MoneyFormat.get("%.2f", EUR, Locale.US), MoneyFormat.get("%.2f", EUR, Locale.US));
+
+        DoubleProperty amount = new SimpleDoubleProperty(1.5);
+        ObjectProperty<Currency> ccy = new SimpleObjectProperty<>(USD);
+        StringExpression formatted = new Money(amount, ccy).formattedProperty("%.2f ");
+        String text = String.format("%.2f %s", 1.5, USD.getSymbol(Locale.getDefault(Locale.Category.FORMAT)));
+        assertEquals(text, formatted.get());
+
+        String previous = formatted.get();
+        amount.set(1.501);
+        assertSame(previous, formatted.get());
+
+        ccy.set(EUR);
+        assertEquals(String.format("%.2f %s", 1.501, EUR.getSymbol(Locale.getDefault(Locale.Category.FORMAT))), formatted.get());
+    }
+}
@@ -0,0 +1,87 @@
+package utils.javafx;
+
+import javafx.beans.binding.DoubleBinding;
+import javafx.beans.property.DoubleProperty;
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.SimpleDoubleProperty;
+import javafx.beans.property.SimpleObjectProperty;
+import org.junit.Test;
+
+import java.util.Currency;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MoneyFormulaTest {
+
+    private static final Currency USD = Currency.getInstance("USD");
+    private static final Currency EUR = Currency.getInstance("EUR");
+
+    @Test
+    public void testPnl() throws Exception {
+
+        DoubleProperty price = new SimpleDoubleProperty(10);
+        DoubleProperty qty = new SimpleDoubleProperty(100);
+        ObjectProperty<Currency> tradeCcy = new SimpleObjectProperty<>(EUR);
+        ObjectProperty<Currency> reportCcy = new SimpleObjectProperty<>(USD);
+        Money cost = new Money(new SimpleDoubleProperty(900), reportCcy);
+
+        Money chained = new Money(price, tradeCcy).multiply(qty).convert(reportCcy).subtract(cost);
+        Money fused = new Money(price, tradeCcy).toFormula().multiply(qty).convert(reportCcy).subtract(cost).compile();
+
+        assertEquals(300., fused.getAmount().doubleValue(), 1e-9);
+        // price, qty, the shared EUR/USD rate and the cost: no intermediate binding
+        assertEquals(4, ((DoubleBinding) fused.amountProperty()).getDependencies().size());
+
+        price.set(11);
+        qty.set(50);
+        assertEquals(chained.getAmount().doubleValue(), fused.getAmount().doubleValue(), 1e-9);
+        reportCcy.set(EUR);
+        assertEquals(chained.getAmount().doubleValue(), fused.getAmount().doubleValue(), 1e-9);
+        tradeCcy.set(USD);
+        assertEquals(chained.getAmount().doubleValue(), fused.getAmount().doubleValue(), 1e-9);
+    }
+
+    @Test
+    public void testArithmetic() throws Exception {
+
+        DoubleProperty a = new SimpleDoubleProperty(8);
+        DoubleProperty b = new SimpleDoubleProperty(2);
+        MoneyFormula x = MoneyFormula.of(a, EUR);
+        MoneyFormula y = MoneyFormula.of(b, EUR);
+
+        // (a - b * 3) / b + a, with a used twice but only depended on once
+        Money result = x.subtract(y.multiply(3)).divide(b).add(x).compile();
+        assertEquals(9., result.getAmount().doubleValue(), 1e-12);
+        assertEquals(2, ((DoubleBinding) result.amountProperty()).getDependencies().size());
+        b.set(4);
+        assertEquals(7., result.getAmount().doubleValue(), 1e-12);
+
+        assertEquals(9.6, x.convert(USD).compile().getAmount().doubleValue(), 1e-12);
+        try {
+            x.add(MoneyFormula.of(b, USD));
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testFixedCurrency() throws Exception {
+
+        DoubleProperty a = new SimpleDoubleProperty(8);
+        DoubleProperty b = new SimpleDoubleProperty(2);
+
+        // a formula of a fixed currency mixes with the amounts of that currency, and shares their rate bindings
+        Money sum = MoneyFormula.of(a, EUR).add(new Money(b, EUR).toFormula()).compile();
+        assertEquals(10., sum.getAmount().doubleValue(), 1e-12);
+        assertSame(new Money(b, EUR).currencyProperty(), sum.currencyProperty());
+
+        Money converted = MoneyFormula.of(a, EUR).convert(USD).compile();
+        assertTrue(((DoubleBinding) converted.amountProperty()).getDependencies().contains(Money.getRate(new Money(b, EUR).currencyProperty(), USD)));
+        assertSame(new Money(b, USD).currencyProperty(), converted.currencyProperty());
+        assertEquals(11.6, converted.toFormula().add(new Money(b, USD)).compile().getAmount().doubleValue(), 1e-12);
+    }
+}
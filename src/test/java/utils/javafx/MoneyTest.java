@@ -1,5 +1,6 @@
 package utils.javafx;
 
+import javafx.beans.binding.DoubleExpression;
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleDoubleProperty;
@@ -10,9 +11,14 @@ import org.junit.Test;
 import org.pmw.tinylog.Logger;
 import utils.javafx.Money;
 
+import java.util.ArrayList;
 import java.util.Currency;
+import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Created by mac on 09/04/2016.
@@ -118,4 +124,116 @@ public class MoneyTest {
         Logger.info("o2 value (def ccy): " + o2ValDefCcy.formattedProperty("%.2f").get());
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testCompensatedSum() throws Exception {
+
+        ObservableList<Order> orders = FXCollections.observableArrayList();
+        Money plain = Money.sum(orders, Order::getValue, Currency.getInstance("USD"));
+        Money compensated = Money.sum(orders, Order::getValue, defCurrency, Summation.COMPENSATED);
+
+        Order o1 = new Order(10, 1e9);
+        Order o2 = new Order(.01, 3);
+        orders.addAll(o1, o2);
+        assertEquals(1e10 + .03, compensated.getAmount().doubleValue(), 1e-6);
+
+        for (int i = 0; i < 1000; i++) {
+            o2.quantity.set(i % 7);
+            o1.price.set(10 + i % 3);
+            compensated.getAmount();
+        }
+        o1.price.set(10);
+        o2.quantity.set(3);
+        assertEquals(plain.getAmount().doubleValue(), compensated.getAmount().doubleValue(), 1e-6);
+
+        defCurrency.set(Currency.getInstance("EUR"));
+        assertEquals(plain.getAmount().doubleValue() / 1.2, compensated.getAmount().doubleValue(), 1e-6);
+        defCurrency.set(Currency.getInstance("USD"));
+    }
+
+    @Test
+    public void testSharedRates() throws Exception {
+
+        Currency usd = Currency.getInstance("USD");
+        Currency eur = Currency.getInstance("EUR");
+        assertSame(Money.getRate(eur, usd), Money.getRate(eur, usd));
+        assertSame(Money.getRate(eur, defCurrency), Money.getRate(eur, defCurrency));
+        assertNotSame(Money.getRate(eur, usd), Money.getRate(usd, eur));
+        assertNotSame(Money.getRate(eur, usd), Money.getRate(eur, defCurrency));
+
+        ObservableList<Order> orders = FXCollections.observableArrayList();
+        Money total = Money.sum(orders, Order::getValue, defCurrency);
+        for (int i = 0; i < 1000; i++) {
+            orders.add(new Order(new Money(1, eur), 1));
+        }
+        assertEquals(1200., total.getAmount().doubleValue(), 1e-6);
+
+        FxRateProvider previous = Money.getRateProvider();
+        MatrixFxRateProvider rates = new MatrixFxRateProvider(usd);
+        rates.setRate(eur, usd, 1.1);
+        Money.setRateProvider(rates);
+        try {
+            assertEquals(1100., total.getAmount().doubleValue(), 1e-6);
+        } finally {
+            Money.setRateProvider(previous);
+        }
+        assertEquals(1200., total.getAmount().doubleValue(), 1e-6);
+    }
+
+    @Test
+    public void testFixedCurrencies() throws Exception {
+
+        Currency chf = Currency.getInstance("CHF");
+        ObjectProperty<Currency> target = new SimpleObjectProperty<>(Currency.getInstance("USD"));
+        int before = RateBindings.size();
+        List<DoubleExpression> converted = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            converted.add(new Money(i, chf).inCurrency(target));
+        }
+        // a single CHF->target binding for the 1000 rows (bindings left by other tests can only be collected meanwhile)
+        assertTrue(RateBindings.size() - before <= 1);
+        assertSame(new Money(1, chf).currencyProperty(), new Money(new SimpleDoubleProperty(2), chf).currencyProperty());
+
+        // amounts created with the same fixed currency are in the same currency
+        Money a = new Money(6, chf);
+        Money b = new Money(new SimpleDoubleProperty(2), chf);
+        assertEquals(8., a.add(b).getAmount().doubleValue(), 1e-6);
+        assertEquals(4., a.subtract(b).getAmount().doubleValue(), 1e-6);
+        assertEquals(3., a.divide(b).get(), 1e-6);
+    }
+
+    @Test
+    public void testSumByCurrency() throws Exception {
+
+        Currency usd = Currency.getInstance("USD");
+        Currency eur = Currency.getInstance("EUR");
+        ObservableList<Order> orders = FXCollections.observableArrayList();
+        Money converted = Money.sum(orders, Order::getValue, defCurrency, Summation.PLAIN);
+        Money byCurrency = Money.sumByCurrency(orders, Order::getValue, defCurrency, Summation.PLAIN);
+
+        List<ObjectProperty<Currency>> currencies = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            ObjectProperty<Currency> ccy = new SimpleObjectProperty<>(i % 3 == 0 ? eur : usd);
+            currencies.add(ccy);
+            orders.add(new Order(new Money(i % 10 + .25, ccy), i % 7));
+        }
+        assertEquals(converted.getAmount().doubleValue(), byCurrency.getAmount().doubleValue(), 1e-6);
+        assertEquals(2, ((MultiCurrencySum<?>) byCurrency.amountProperty()).getCurrencyCount());
+
+        defCurrency.set(eur);
+        assertEquals(converted.getAmount().doubleValue(), byCurrency.getAmount().doubleValue(), 1e-6);
+
+        for (ObjectProperty<Currency> ccy : currencies) {
+            ccy.set(eur);
+        }
+        orders.get(5).quantity.set(100);
+        orders.remove(0, 10);
+        assertEquals(converted.getAmount().doubleValue(), byCurrency.getAmount().doubleValue(), 1e-6);
+        assertEquals(1, ((MultiCurrencySum<?>) byCurrency.amountProperty()).getCurrencyCount());
+
+        defCurrency.set(usd);
+        currencies.get(500).set(usd);
+        assertEquals(converted.getAmount().doubleValue(), byCurrency.getAmount().doubleValue(), 1e-6);
+        assertEquals(2, ((MultiCurrencySum<?>) byCurrency.amountProperty()).getCurrencyCount());
+    }
+}
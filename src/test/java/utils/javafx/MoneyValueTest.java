@@ -0,0 +1,77 @@
+package utils.javafx;
+
+import javafx.beans.property.SimpleObjectProperty;
+import org.junit.Test;
+
+import java.util.Currency;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class MoneyValueTest {
+
+    private static final Currency USD = Currency.getInstance("USD");
+    private static final Currency EUR = Currency.getInstance("EUR");
+    private static final Currency JPY = Currency.getInstance("JPY");
+
+    @Test
+    public void testRounding() throws Exception {
+
+        assertEquals(1234, MoneyValue.of(12.34, EUR).getMinorUnits());
+        assertEquals(101, MoneyValue.of(1.005, EUR).getMinorUnits());
+        assertEquals(-101, MoneyValue.of(-1.005, EUR).getMinorUnits());
+        assertEquals(1235, MoneyValue.of(1234.5, JPY).getMinorUnits());
+        assertEquals("12.30 EUR", MoneyValue.of(12.3, EUR).toString());
+        assertEquals("-7 JPY", MoneyValue.of(-7, JPY).toString());
+
+        Random random = new Random(7);
+        for (int i = 0; i < 100_000; i++) {
+            double amount = (random.nextInt(2_000_000) - 1_000_000) / 1000.;
+            MoneyValue value = MoneyValue.of(amount, USD);
+            assertEquals(String.format("%.2f", amount), MoneyValue.ofMinor(value.getMinorUnits(), USD).toString().replace(" USD", ""));
+        }
+    }
+
+    @Test
+    public void testArithmetic() throws Exception {
+
+        MoneyValue a = MoneyValue.of(10.10, EUR);
+        MoneyValue b = MoneyValue.ofMinor(-250, EUR);
+        assertEquals(MoneyValue.of(7.60, EUR), a.add(b));
+        assertEquals(MoneyValue.of(12.60, EUR), a.subtract(b));
+        assertEquals(MoneyValue.of(30.30, EUR), a.multiply(3));
+        assertEquals(MoneyValue.of(3.37, EUR), a.multiply(1. / 3));
+        assertEquals(1, a.compareTo(b));
+        assertEquals(-1, b.signum());
+        assertEquals(10.1, a.getAmount(), 0.);
+
+        assertSame(a, a.convert(EUR));
+        assertEquals(MoneyValue.of(12.12, USD), a.convert(USD));
+
+        try {
+            a.add(MoneyValue.of(1, USD));
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            MoneyValue.ofMinor(Long.MAX_VALUE, EUR).add(MoneyValue.ofMinor(1, EUR));
+            fail();
+        } catch (ArithmeticException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testBridge() throws Exception {
+
+        MoneyValue value = MoneyValue.of(99.99, EUR);
+        Money money = value.toMoney();
+        assertEquals(99.99, money.getAmount().doubleValue(), 0.);
+        assertEquals(EUR, money.currencyProperty().get());
+        assertEquals(value, money.getValue());
+        assertEquals(MoneyValue.of(119.99, USD), money.convert(new SimpleObjectProperty<>(USD)).getValue());
+    }
+}
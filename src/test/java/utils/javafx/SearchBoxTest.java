@@ -0,0 +1,225 @@
+package utils.javafx;
+
+import com.google.gson.GsonBuilder;
+import javafx.beans.Observable;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.property.StringProperty;
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import org.junit.Test;
+import utils.javafx.SearchIndexTest.Instrument;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class SearchBoxTest {
+
+    static class Quote {
+        final StringProperty name;
+        final StringProperty exchange;
+
+        Quote(String name, String exchange) {
+            this.name = new SimpleStringProperty(name);
+            this.exchange = new SimpleStringProperty(exchange);
+        }
+
+        @Override
+        public String toString() {
+            return name.get();
+        }
+    }
+
+    private static ObservableList<Quote> quotes(Quote... quotes) {
+        ObservableList<Quote> items = FXCollections.observableArrayList(quote -> new Observable[]{quote.name, quote.exchange});
+        items.addAll(quotes);
+        return items;
+    }
+
+    private static SearchBox.Options<Quote> quoteOptions() {
+        return new SearchBox.Options<Quote>()
+                .setFields(Arrays.asList(FieldExtractor.of("name", quote -> quote.name.get()), FieldExtractor.of("exchange", quote -> quote.exchange.get())))
+                .setNameField("name")
+                .setUpdateScheduler(Runnable::run);
+    }
+
+    private static SearchBox.Options<Instrument> options() {
+        // changes applied right away rather than on the next pulse
+        return new SearchBox.Options<Instrument>().setUpdateScheduler(Runnable::run);
+    }
+
+    @Test
+    public void testRemovedBeans() throws Exception {
+
+        Instrument vod = new Instrument("vodafone", "LSE", "GBP");
+        Instrument vow = new Instrument("volkswagen", "XETRA", "EUR");
+        Instrument bp = new Instrument("bp", "LSE", "GBP");
+        ObservableList<Instrument> items = FXCollections.observableArrayList(vod, vow, bp);
+        ObservableList<Instrument> results = FXCollections.observableArrayList();
+        SearchBox.Search<Instrument> search = SearchBox.search(items, results, options());
+
+        search.query("vo");
+        assertEquals(Arrays.asList(vod, vow), results);
+        items.remove(vod);
+        assertEquals(Collections.singletonList(vow), results);
+        items.clear();
+        assertEquals(Collections.emptyList(), results);
+        search.query("lse");
+        assertEquals(Collections.emptyList(), results);
+    }
+
+    @Test
+    public void testJsonNulls() throws Exception {
+
+        Instrument vod = new Instrument("vodafone", null, "GBP");
+        Map<String, String> fields = SearchBox.jsonFields(new GsonBuilder().serializeNulls().create().toJsonTree(vod));
+        assertEquals("{name=vodafone, ccy=GBP}", fields.toString());
+    }
+
+    @Test
+    public void testUpdates() throws Exception {
+
+        Quote vod = new Quote("vodafone", "LSE");
+        Quote vow = new Quote("volkswagen", "XETRA");
+        Quote bp = new Quote("bp", "LSE");
+        ObservableList<Quote> items = quotes(vod, vow, bp);
+        ObservableList<Quote> results = FXCollections.observableArrayList();
+        SearchBox.Search<Quote> search = SearchBox.search(items, results, quoteOptions());
+        search.query("vo");
+        assertEquals(Arrays.asList(vod, vow), results);
+
+        List<String> changes = new ArrayList<>();
+        results.addListener((ListChangeListener<Quote>) c -> {
+            while (c.next()) {
+                changes.add((c.wasReplaced() ? "replaced " : c.wasAdded() ? "added " : "removed ") + c.getFrom());
+            }
+        });
+
+        // still matching: stays in place, its cell refreshed
+        vod.exchange.set("LSE IOB");
+        assertEquals(Arrays.asList(vod, vow), results);
+        assertEquals(Collections.singletonList("replaced 0"), changes);
+
+        changes.clear();
+        bp.name.set("bp vostok");
+        assertEquals(Arrays.asList(vod, vow, bp), results);
+        assertEquals(Collections.singletonList("added 2"), changes);
+
+        changes.clear();
+        vow.name.set("vw");
+        assertEquals(Arrays.asList(vod, bp), results);
+        assertEquals(Collections.singletonList("removed 1"), changes);
+
+        items.remove(vod);
+        assertEquals(Collections.singletonList(bp), results);
+    }
+
+    @Test
+    public void testListOrder() throws Exception {
+
+        Quote vod = new Quote("vodafone", "LSE");
+        Quote vow = new Quote("volkswagen", "XETRA");
+        Quote bp = new Quote("bp", "LSE");
+        ObservableList<Quote> items = quotes(vod, vow, bp);
+        ObservableList<Quote> results = FXCollections.observableArrayList();
+        SearchBox.Search<Quote> search = SearchBox.search(items, results, quoteOptions());
+
+        // indexed again after vow, still listed before it
+        vod.exchange.set("LSE IOB");
+        search.query("vo");
+        assertEquals(Arrays.asList(vod, vow), results);
+
+        // a new match enters at its position in the list
+        Quote volvo = new Quote("volvo", "OMX");
+        items.add(1, volvo);
+        assertEquals(Arrays.asList(vod, volvo, vow), results);
+        search.query("l");
+        assertEquals(Arrays.asList(vod, volvo, vow, bp), results);
+    }
+
+    @Test
+    public void testSelectionJson() throws Exception {
+
+        Quote vod = new Quote("vodafone", null);
+        assertEquals("{\"name\":\"vodafone\",\"exchange\":null}", SearchBox.selectionJson(vod, quoteOptions().getFields()).toString());
+        Instrument bp = new Instrument("bp", "LSE", "GBP");
+        assertEquals("{\"name\":\"bp\",\"exchange\":\"LSE\",\"ccy\":\"GBP\"}", SearchBox.selectionJson(bp, Collections.emptyList()).toString());
+    }
+
+    @Test
+    public void testRankedUpdates() throws Exception {
+
+        Quote exact = new Quote("vod", "LSE");
+        Quote prefix = new Quote("vodafone", "LSE");
+        Quote otherPrefix = new Quote("vodka", "LSE");
+        Quote contains = new Quote("avod", "XETRA");
+        ObservableList<Quote> items = quotes(exact, prefix, otherPrefix, contains);
+        ObservableList<Quote> results = FXCollections.observableArrayList();
+        SearchBox.Search<Quote> search = SearchBox.search(items, results, quoteOptions().setLimit(2));
+        search.query("vod");
+        assertEquals(Arrays.asList(exact, prefix), results);
+
+        // enters at its rank, after the one it ties with, and pushes the last one out
+        contains.name.set("vod");
+        assertEquals(Arrays.asList(exact, contains), results);
+
+        // a full result set losing a bean is searched again
+        exact.name.set("xyz");
+        assertEquals(Arrays.asList(contains, prefix), results);
+        items.remove(contains);
+        assertEquals(Arrays.asList(prefix, otherPrefix), results);
+    }
+
+    @Test
+    public void testExecutor() throws Exception {
+
+        Quote vod = new Quote("vodafone", "LSE");
+        Quote vow = new Quote("volkswagen", "XETRA");
+        Quote bp = new Quote("bp", "LSE");
+        ObservableList<Quote> items = quotes(vod, vow, bp);
+        ObservableList<Quote> results = FXCollections.observableArrayList();
+        BlockingQueue<Runnable> fxQueue = new LinkedBlockingQueue<>();
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        try {
+            SearchBox.Search<Quote> search = SearchBox.search(items, results, quoteOptions().setExecutor(executor).setUpdateScheduler(fxQueue::add));
+            search.query("vo");
+            Runnable first = fxQueue.poll(5, TimeUnit.SECONDS);
+            assertEquals(Collections.emptyList(), results);
+            first.run();
+            assertEquals(Arrays.asList(vod, vow), results);
+
+            // only the result of the latest text is published
+            search.query("lse");
+            Runnable stale = fxQueue.poll(5, TimeUnit.SECONDS);
+            search.query("bp");
+            Runnable latest = fxQueue.poll(5, TimeUnit.SECONDS);
+            stale.run();
+            assertEquals(Arrays.asList(vod, vow), results);
+            latest.run();
+            assertEquals(Collections.singletonList(bp), results);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testLimit() throws Exception {
+        try {
+            new SearchBox.Options<Quote>().setLimit(0);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
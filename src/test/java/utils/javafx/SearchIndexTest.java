@@ -0,0 +1,497 @@
+package utils.javafx;
+
+import com.google.gson.Gson;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SearchIndexTest {
+
+    private static final String[] EXCHANGES = {"LSE", "XETRA", "NYSE", "Euronext"};
+    private static final String[] CURRENCIES = {"GBP", "EUR", "USD"};
+    private static final String[] WORDS = {"vodafone", "volkswagen", "total", "bp", "shell", "airbus", "apple", "orange", "vivendi", "siemens"};
+
+    static class Instrument {
+        String name;
+        String exchange;
+        String ccy;
+
+        Instrument(String name, String exchange, String ccy) {
+            this.name = name;
+            this.exchange = exchange;
+            this.ccy = ccy;
+        }
+
+        Map<String, String> fields() {
+            Map<String, String> fields = new LinkedHashMap<>();
+            fields.put("name", name);
+            fields.put("exchange", exchange);
+            fields.put("ccy", ccy);
+            return fields;
+        }
+
+        @Override
+        public String toString() {
+            return name + "@" + exchange;
+        }
+    }
+
+    static Instrument random(Random random) {
+        return new Instrument(WORDS[random.nextInt(WORDS.length)] + " " + random.nextInt(1000),
+                EXCHANGES[random.nextInt(EXCHANGES.length)], CURRENCIES[random.nextInt(CURRENCIES.length)]);
+    }
+
+    static List<Instrument> scan(List<Instrument> instruments, String pattern) {
+        String lower = pattern.toLowerCase();
+        return instruments.stream()
+                .filter(i -> i.fields().values().stream().anyMatch(v -> v.toLowerCase().contains(lower)))
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void testSearch() throws Exception {
+
+        SearchIndex<Instrument> index = new SearchIndex<>(Instrument::fields);
+        Instrument vod = new Instrument("Vodafone Group", "LSE", "GBP");
+        Instrument vow = new Instrument("Volkswagen", "XETRA", "EUR");
+        Instrument bp = new Instrument("BP", "LSE", "GBP");
+        index.add(vod);
+        index.add(vow);
+        index.add(bp);
+
+        assertEquals(3, index.size());
+        assertEquals(2, index.search("vo").size());
+        assertEquals(1, index.search("DAFONE").size());
+        assertEquals(2, index.search("lse").size());
+        assertEquals(0, index.search("vodafonex").size());
+        assertEquals(0, index.search("").size());
+        assertEquals("[name=Vodafone Group]", index.matchedFields(vod, "group").toString());
+        assertEquals("[name=BP, exchange=LSE, ccy=GBP]", index.matchedFields(bp, "").toString());
+
+        vod.exchange = "Euronext";
+        index.update(vod);
+        assertEquals(1, index.search("lse").size());
+        assertEquals(1, index.search("next").size());
+
+        index.remove(bp);
+        assertEquals(0, index.search("lse").size());
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    public void testFieldExtractors() throws Exception {
+
+        List<FieldExtractor<Instrument>> extractors = new ArrayList<>();
+        extractors.add(FieldExtractor.of("name", i -> i.name));
+        extractors.add(FieldExtractor.of("exchange", i -> i.exchange));
+        extractors.add(FieldExtractor.of("ccy", i -> i.ccy));
+        SearchIndex<Instrument> index = new SearchIndex<>(extractors);
+        SearchIndex<Instrument> reference = new SearchIndex<>(Instrument::fields);
+        Random random = new Random(7);
+        List<Instrument> instruments = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            Instrument instrument = random(random);
+            instruments.add(instrument);
+            index.add(instrument);
+            reference.add(instrument);
+        }
+        Instrument unlisted = new Instrument("Unlisted", null, "EUR");
+        index.add(unlisted);
+        reference.add(unlisted);
+
+        for (String pattern : new String[]{"vo", "lse", "EUR", "a 1", "unl", "null"}) {
+            assertEquals(pattern, reference.search(pattern), index.search(pattern));
+        }
+        assertEquals("[name=Unlisted, exchange=, ccy=EUR]", index.matchedFields(unlisted, "").toString());
+    }
+
+    static class Leg {
+        String ccy;
+        double notional;
+
+        Leg(String ccy, double notional) {
+            this.ccy = ccy;
+            this.notional = notional;
+        }
+    }
+
+    static class Swap {
+        String name;
+        Leg[] legs;
+        List<String> tags;
+
+        Swap(String name, List<String> tags, Leg... legs) {
+            this.name = name;
+            this.legs = legs;
+            this.tags = tags;
+        }
+    }
+
+    @Test
+    public void testNestedFields() throws Exception {
+
+        Gson gson = new Gson();
+        SearchIndex<Swap> index = new SearchIndex<>(swap -> SearchBox.jsonFields(gson.toJsonTree(swap)));
+        Swap xccy = new Swap("EURUSD xccy", Arrays.asList("basis", "otc"), new Leg("EUR", 1e6), new Leg("USD", 1.2e6));
+        Swap irs = new Swap("GBP irs", Collections.singletonList("otc"), new Leg("GBP", 5e6));
+        index.add(xccy);
+        index.add(irs);
+
+        assertEquals(Arrays.asList(xccy), index.search("usd"));
+        assertEquals(Arrays.asList(xccy, irs), index.search("otc"));
+        assertEquals(Arrays.asList(irs), index.search("5000000"));
+        assertEquals("[name=EURUSD xccy, legs[1].ccy=USD]", index.matchedFields(xccy, "usd").toString());
+        assertEquals("[tags[0]=basis]", index.matchedFields(xccy, "basis").toString());
+    }
+
+    @Test
+    public void testInterning() throws Exception {
+
+        SearchIndex<Instrument> index = new SearchIndex<>(Instrument::fields);
+        for (int i = 0; i < 1000; i++) {
+            index.add(new Instrument("bp " + i, new String(i % 2 == 0 ? "LSE" : "XETRA"), new String("GBP")));
+        }
+        // the unique lowercase names once each, the shared values and their lowercase once, and the 3 field names
+        assertEquals(1000 + 6 + 3, index.pooledStringCount());
+        List<Instrument> lse = index.search("lse");
+        assertSame(index.matchedFields(lse.get(0), "lse").get(0).getValue(), index.matchedFields(lse.get(1), "lse").get(0).getValue());
+    }
+
+    @Test
+    public void testRanking() throws Exception {
+
+        SearchIndex<Instrument> index = new SearchIndex<>(Instrument::fields);
+        index.setNameField("name");
+        Instrument euronext = new Instrument("Euronext NV", "Euronext", "EUR");
+        Instrument eurostoxx = new Instrument("Eurostoxx future", "XETRA", "EUR");
+        Instrument eur = new Instrument("Eur", "LSE", "GBP");
+        Instrument bank = new Instrument("Bank of Europe", "LSE", "GBP");
+        Instrument gbp = new Instrument("Total", "LSE", "EUR");
+        index.add(euronext);
+        index.add(eurostoxx);
+        index.add(eur);
+        index.add(bank);
+        index.add(gbp);
+
+        // exact name, then exact currency by number of fields matched, then only contained in the name
+        assertEquals(Arrays.asList(eur, euronext, eurostoxx, gbp, bank), index.search("eur", 10));
+        assertEquals(Arrays.asList(eur, euronext), index.search("eur", 2));
+        assertTrue(index.score(gbp, "eur") > index.score(bank, "eur"));
+        assertEquals(0, index.score(bank, "xetra"));
+        assertEquals(Arrays.asList(euronext, eurostoxx, eur, bank, gbp), index.search("eur"));
+
+        Random random = new Random(11);
+        for (int i = 0; i < 1000; i++) {
+            index.add(random(random));
+        }
+        for (String pattern : new String[]{"v", "vo", "lse", "EUR", "e 1", "bp 1"}) {
+            List<Instrument> all = index.search(pattern);
+            List<Instrument> ranked = index.search(pattern, index.size());
+            assertEquals(pattern, new HashSet<>(all), new HashSet<>(ranked));
+            assertEquals(pattern, all.size(), ranked.size());
+            for (int limit : new int[]{0, 1, 5, 50}) {
+                assertEquals(pattern, ranked.subList(0, Math.min(limit, ranked.size())), index.search(pattern, limit));
+            }
+            for (int i = 1; i < ranked.size(); i++) {
+                assertTrue(pattern, index.score(ranked.get(i - 1), pattern) >= index.score(ranked.get(i), pattern));
+            }
+        }
+    }
+
+    @Test
+    public void testEarlyStop() throws Exception {
+
+        SearchIndex<Instrument> index = new SearchIndex<>(Instrument::fields);
+        index.setNameField("name");
+        List<Instrument> exact = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Instrument instrument = new Instrument(i % 2 == 0 ? "vod" : "vodafone " + i, "LSE", "GBP");
+            index.add(instrument);
+            if (i % 2 == 0) {
+                exact.add(instrument);
+            }
+        }
+
+        // the heap is full of exact name matches after the first 9 candidates
+        assertEquals(exact.subList(0, 5), index.search("vod", 5));
+        assertEquals(9, index.getLastCandidateCount());
+        assertEquals(exact.subList(0, 5), index.search(SearchQuery.parse("name:vod ccy:gbp"), 5));
+        assertEquals(9, index.getLastCandidateCount());
+        // every name contains "vod" without an edit
+        assertEquals(5, index.searchFuzzy("vod", 1, 5).size());
+        assertEquals(5, index.getLastCandidateCount());
+
+        // not enough exact matches: every candidate is checked
+        assertEquals(exact, index.search("vod", 60).subList(0, 50));
+        assertEquals(100, index.getLastCandidateCount());
+    }
+
+    @Test
+    public void testFuzzy() throws Exception {
+
+        SearchIndex<Instrument> index = new SearchIndex<>(Instrument::fields);
+        index.setNameField("name");
+        Instrument vod = new Instrument("Vodafone Group", "LSE", "GBP");
+        Instrument vow = new Instrument("Volkswagen", "XETRA", "EUR");
+        index.add(vod);
+        index.add(vow);
+        assertEquals(Collections.emptyList(), index.search("vodafnoe"));
+        assertEquals(Arrays.asList(vod), index.searchFuzzy("vodafnoe", 2, Integer.MAX_VALUE));
+        assertEquals(Collections.emptyList(), index.searchFuzzy("vodafnoe", 1, Integer.MAX_VALUE));
+        assertEquals("[name=Vodafone Group]", index.matchedFieldsFuzzy(vod, "vodafnoe", 2).toString());
+        // as many edits as characters would match anything
+        assertEquals(Arrays.asList(vow), index.searchFuzzy("x", 1, Integer.MAX_VALUE));
+
+        Random random = new Random(13);
+        List<Instrument> instruments = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            Instrument instrument = random(random);
+            instruments.add(instrument);
+            index.add(instrument);
+        }
+        for (String pattern : new String[]{"vodafnoe", "siemsn", "airbsu 1", "xerta", "oragne", "tot", "lse", "zzzzzz"}) {
+            for (int maxEdits = 1; maxEdits <= 2; maxEdits++) {
+                int edits = maxEdits;
+                String lower = pattern.toLowerCase();
+                List<Instrument> expected = new ArrayList<>(Arrays.asList(vod, vow));
+                expected.addAll(instruments);
+                expected.removeIf(instrument -> instrument.fields().values().stream()
+                        .noneMatch(v -> FuzzyPatternTest.distance(lower, v.toLowerCase()) <= Math.min(edits, lower.length() - 1)));
+                assertEquals(pattern, expected, index.searchFuzzy(pattern, maxEdits, Integer.MAX_VALUE));
+                if (pattern.length() > 3 * maxEdits) {
+                    // long enough for 3-grams to filter
+                    assertTrue(pattern, index.getLastCandidateCount() < index.size() / 4);
+                }
+
+                List<Instrument> ranked = index.searchFuzzy(pattern, maxEdits, 10);
+                assertEquals(pattern, Math.min(10, expected.size()), ranked.size());
+                for (int i = 1; i < ranked.size(); i++) {
+                    assertTrue(pattern, index.scoreFuzzy(ranked.get(i - 1), pattern, maxEdits) >= index.scoreFuzzy(ranked.get(i), pattern, maxEdits));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testQuery() throws Exception {
+
+        SearchIndex<Instrument> index = new SearchIndex<>(Instrument::fields);
+        Random random = new Random(17);
+        List<Instrument> instruments = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            Instrument instrument = random(random);
+            instruments.add(instrument);
+            index.add(instrument);
+        }
+        Instrument vod = new Instrument("Vodafone Group", "LSE", "GBP");
+        instruments.add(vod);
+        index.add(vod);
+
+        assertEquals(Arrays.asList(vod), index.search(SearchQuery.parse("ccy:gbp name:\"vodafone group\""), Integer.MAX_VALUE));
+        assertEquals(Collections.emptyList(), index.search(SearchQuery.parse("ccy:gbp -exchange:lse vodafone group"), Integer.MAX_VALUE));
+        assertEquals(Collections.emptyList(), index.search(SearchQuery.parse("side:buy vod"), Integer.MAX_VALUE));
+        assertEquals("[name=Vodafone Group, ccy=GBP]", index.matchedFields(vod, SearchQuery.parse("ccy:gbp vod -x")).toString());
+        checkQueries(index, instruments);
+
+        // without field postings, a scoped term goes through the n-grams of all the fields
+        index.search(SearchQuery.parse("ccy:eur"), Integer.MAX_VALUE);
+        int unscoped = index.getLastCandidateCount();
+        index.search(SearchQuery.parse("eur -x:y"), Integer.MAX_VALUE);
+        assertEquals(unscoped, index.getLastCandidateCount());
+
+        // turned on with documents already indexed, then more added
+        index.setFieldPostings(true);
+        for (int i = 0; i < 1000; i++) {
+            Instrument instrument = random(random);
+            instruments.add(instrument);
+            index.add(instrument);
+        }
+        checkQueries(index, instruments);
+
+        // scoped to the currency field, "eur" is not found in "Euronext"
+        index.search(SearchQuery.parse("ccy:eur"), Integer.MAX_VALUE);
+        int scoped = index.getLastCandidateCount();
+        index.search(SearchQuery.parse("eur -x:y"), Integer.MAX_VALUE);
+        assertTrue(scoped < index.getLastCandidateCount());
+        index.search(SearchQuery.parse("ccy:gbp name:\"vodafone group\""), Integer.MAX_VALUE);
+        assertTrue(index.getLastCandidateCount() < 10);
+
+        index.setFieldPostings(false);
+        checkQueries(index, instruments);
+    }
+
+    private static void checkQueries(SearchIndex<Instrument> index, List<Instrument> instruments) {
+        for (String text : new String[]{"ccy:EUR", "ccy:eur vod", "exchange:xetra -ccy:usd", "-ccy:gbp -ccy:eur", "total ccy:u", "name:e 1", "-name:e",
+                "ccy:EUR exchange:lse sie", "vo 12 -5", "side:buy", "-side:buy ccy:gbp"}) {
+            SearchQuery query = SearchQuery.parse(text);
+            List<Instrument> expected = new ArrayList<>(instruments);
+            for (SearchQuery.Term term : query.getTerms()) {
+                String value = term.getValue().toLowerCase();
+                expected.removeIf(instrument -> term.isNegated() == instrument.fields().entrySet().stream()
+                        .anyMatch(field -> (term.getField() == null || term.getField().equalsIgnoreCase(field.getKey())) && field.getValue().toLowerCase().contains(value)));
+            }
+            assertEquals(text, expected, index.search(query, Integer.MAX_VALUE));
+
+            List<Instrument> ranked = index.search(query, 20);
+            assertEquals(text, Math.min(20, expected.size()), ranked.size());
+            for (int i = 1; i < ranked.size(); i++) {
+                assertTrue(text, index.score(ranked.get(i - 1), query) >= index.score(ranked.get(i), query));
+            }
+        }
+    }
+
+    @Test
+    public void testRandomChanges() throws Exception {
+
+        Random random = new Random(5);
+        SearchIndex<Instrument> index = new SearchIndex<>(Instrument::fields);
+        List<Instrument> instruments = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            Instrument instrument = random(random);
+            instruments.add(instrument);
+            index.add(instrument);
+        }
+        for (int round = 0; round < 200; round++) {
+            // churn, enough to trigger some compactions
+            for (int i = 0; i < 100; i++) {
+                switch (random.nextInt(3)) {
+                    case 0:
+                        index.remove(instruments.remove(random.nextInt(instruments.size())));
+                        break;
+                    case 1:
+                        Instrument added = random(random);
+                        instruments.add(added);
+                        index.add(added);
+                        break;
+                    default:
+                        Instrument updated = instruments.get(random.nextInt(instruments.size()));
+                        updated.ccy = CURRENCIES[random.nextInt(CURRENCIES.length)];
+                        updated.name = WORDS[random.nextInt(WORDS.length)] + " " + random.nextInt(1000);
+                        index.update(updated);
+                }
+            }
+            String word = WORDS[random.nextInt(WORDS.length)];
+            int from = random.nextInt(word.length());
+            String pattern = word.substring(from, from + 1 + random.nextInt(word.length() - from));
+            if (random.nextBoolean()) {
+                pattern = pattern.toUpperCase();
+            }
+            List<Instrument> expected = scan(instruments, pattern);
+            List<Instrument> actual = index.search(pattern);
+            assertEquals(pattern, expected.size(), actual.size());
+            assertTrue(pattern, actual.containsAll(expected));
+        }
+        assertEquals(instruments.size(), index.size());
+    }
+
+    @Test
+    public void testNarrowing() throws Exception {
+
+        Random random = new Random(9);
+        SearchIndex<Instrument> index = new SearchIndex<>(Instrument::fields);
+        List<Instrument> instruments = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            Instrument instrument = random(random);
+            instruments.add(instrument);
+            index.add(instrument);
+        }
+
+        List<Instrument> v = index.search("v");
+        assertEquals(scan(instruments, "v"), v);
+        List<Instrument> vo = index.search("vo");
+        assertEquals(v.size(), index.getLastCandidateCount());
+        assertEquals(scan(instruments, "vo"), vo);
+        List<Instrument> vod = index.search("vod");
+        assertEquals(vo.size(), index.getLastCandidateCount());
+        assertEquals(scan(instruments, "vod"), vod);
+
+        // backspace
+        assertEquals(vo, index.search("vo"));
+        assertEquals(0, index.getLastCandidateCount());
+
+        // removals are seen by the recent results
+        index.remove(vod.get(0));
+        instruments.remove(vod.get(0));
+        assertEquals(scan(instruments, "vod"), index.search("vod"));
+        assertEquals(0, index.getLastCandidateCount());
+
+        // additions and updates are only searched on top of them
+        Instrument added = new Instrument("Vodafone 2", "LSE", "GBP");
+        index.add(added);
+        instruments.add(added);
+        assertEquals(scan(instruments, "vod"), index.search("vod"));
+        assertEquals(vod.size() + 1, index.getLastCandidateCount());
+        Instrument updated = vod.get(1);
+        updated.name = "bp 1";
+        index.update(updated);
+        assertEquals(scan(instruments, "vod"), index.search("vod"));
+        // the matches of the previous search, the updated bean no longer containing the n-grams of the pattern
+        assertEquals(vod.size(), index.getLastCandidateCount());
+        assertEquals(scan(instruments, "vodafone"), index.search("vodafone"));
+    }
+
+    @Test
+    public void testConcurrentSnapshots() throws Exception {
+
+        Random random = new Random(13);
+        SearchIndex<Instrument> index = new SearchIndex<>(Instrument::fields);
+        List<Instrument> instruments = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            Instrument instrument = random(random);
+            instruments.add(instrument);
+            index.add(instrument);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (int round = 0; round < 50; round++) {
+                SearchIndex<Instrument>.Snapshot snapshot = index.snapshot();
+                List<Instrument> frozen = new ArrayList<>(instruments);
+                String word = WORDS[random.nextInt(WORDS.length)];
+                String pattern = word.substring(0, Math.min(word.length(), 2 + random.nextInt(3)));
+                List<Future<List<Instrument>>> searches = new ArrayList<>();
+                for (int i = 0; i < 4; i++) {
+                    searches.add(executor.submit(() -> snapshot.search(pattern)));
+                }
+                // the writer goes on meanwhile, compactions included
+                for (int i = 0; i < 2000; i++) {
+                    if (random.nextBoolean()) {
+                        index.remove(instruments.remove(random.nextInt(instruments.size())));
+                    } else {
+                        Instrument added = random(random);
+                        instruments.add(added);
+                        index.add(added);
+                    }
+                }
+                List<Instrument> expected = scan(frozen, pattern);
+                for (Future<List<Instrument>> search : searches) {
+                    List<Instrument> found = search.get();
+                    // never a bean added after the snapshot, never a match missed
+                    assertTrue(pattern, frozen.containsAll(found));
+                    assertTrue(pattern, found.containsAll(expected.stream().filter(instruments::contains).collect(Collectors.toList())));
+                }
+            }
+            AtomicBoolean cancelled = new AtomicBoolean(true);
+            assertNull(index.snapshot().search("o", cancelled::get));
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package utils.javafx;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SearchQueryTest {
+
+    @Test
+    public void testParse() throws Exception {
+
+        SearchQuery query = SearchQuery.parse("  ccy:EUR -side:buy vod -lse name:\"vodafone group\" -");
+        assertEquals("ccy:EUR -side:buy vod -lse name:\"vodafone group\" -", query.toString());
+        assertEquals(6, query.getTerms().size());
+        SearchQuery.Term side = query.getTerms().get(1);
+        assertEquals("side", side.getField());
+        assertEquals("buy", side.getValue());
+        assertTrue(side.isNegated());
+        SearchQuery.Term lse = query.getTerms().get(3);
+        assertNull(lse.getField());
+        assertTrue(lse.isNegated());
+        assertEquals("vodafone group", query.getTerms().get(4).getValue());
+        assertFalse(query.isSimple());
+
+        SearchQuery.Term nested = SearchQuery.parse("a:b:c").getTerms().get(0);
+        assertEquals("a", nested.getField());
+        assertEquals("b:c", nested.getValue());
+        assertNull(SearchQuery.parse(":z").getTerms().get(0).getField());
+        // unfinished while typing
+        assertEquals("x y", SearchQuery.parse("\"x y").getTerms().get(0).getValue());
+        assertEquals("", SearchQuery.parse("ccy:").getTerms().get(0).getValue());
+        assertTrue(SearchQuery.parse("vod").isSimple());
+        assertTrue(SearchQuery.of("vodafone group").isSimple());
+        assertEquals(0, SearchQuery.parse("   ").getTerms().size());
+    }
+}
@@ -7,8 +7,15 @@ import javafx.beans.property.SimpleDoubleProperty;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import org.junit.Test;
+import org.pmw.tinylog.Logger;
 import utils.javafx.SumDoubleProperties;
 
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.junit.Assert.*;
 
 /**
@@ -44,11 +51,20 @@ public class SumDoublePropertiesTest {
 
     @Test
     public void testSum() throws Exception {
+        checkSum(SumDoubleProperties.Mode.RESCAN);
+    }
+
+    @Test
+    public void testIncrementalSum() throws Exception {
+        checkSum(SumDoubleProperties.Mode.INCREMENTAL);
+    }
+
+    private void checkSum(SumDoubleProperties.Mode mode) {
 
         ObservableList<Bean> beans = FXCollections.observableArrayList();
 
-        SumDoubleProperties<Bean> price = new SumDoubleProperties<>(beans, Bean::priceProperty);
-        SumDoubleProperties<Bean> qty = new SumDoubleProperties<>(beans, Bean::qtyProperty);
+        SumDoubleProperties<Bean> price = new SumDoubleProperties<>(beans, Bean::priceProperty, mode);
+        SumDoubleProperties<Bean> qty = new SumDoubleProperties<>(beans, Bean::qtyProperty, mode);
 
         assertEquals(0., price.get(), 1e-6);
         assertEquals(0., qty.get(), 1e-6);
@@ -85,7 +101,7 @@ public class SumDoublePropertiesTest {
         beans.get(0).price.set(0.);
 
         ObservableList<Bean> beans2 = FXCollections.observableArrayList();
-        SumDoubleProperties<Bean> price2 = new SumDoubleProperties<>(beans2, Bean::priceProperty);
+        SumDoubleProperties<Bean> price2 = new SumDoubleProperties<>(beans2, Bean::priceProperty, mode);
 
         beans2.addAll(beans);
         beans.clear();
@@ -94,6 +110,119 @@ public class SumDoublePropertiesTest {
         assertEquals(3., price2.get(), 1e-6);
     }
 
+    @Test
+    public void testIncrementalRecompute() throws Exception {
+
+        ObservableList<Bean> beans = FXCollections.observableArrayList();
+        SumDoubleProperties<Bean> price = new SumDoubleProperties<>(beans, Bean::priceProperty, SumDoubleProperties.Mode.INCREMENTAL);
+        price.setDriftCorrectionInterval(3);
+
+        for (int i = 0; i < 10; i++) {
+            beans.add(new Bean(i, 0.));
+        }
+        assertEquals(45., price.get(), 1e-6);
+
+        beans.get(0).price.set(Double.POSITIVE_INFINITY);
+        assertEquals(Double.POSITIVE_INFINITY, price.get(), 1e-6);
+        beans.get(1).price.set(Double.NEGATIVE_INFINITY);
+        assertEquals(Double.NaN, price.get(), 1e-6);
+        beans.get(0).price.set(0.);
+        beans.get(1).price.set(1.);
+        assertEquals(45., price.get(), 1e-6);
+
+        // items added and removed before anyone reads the sum
+        for (int i = 0; i < 100; i++) {
+            Bean bean = new Bean(1000., 0.);
+            beans.add(bean);
+            beans.remove(bean);
+        }
+        assertEquals(45., price.get(), 1e-6);
+
+        beans.get(9).price.set(1e20);
+        beans.get(8).price.set(1.);
+        assertEquals(1e20, price.get(), 1e-6);
+        beans.get(9).price.set(9.);
+        beans.get(8).price.set(8.);
+        price.recompute();
+        assertEquals(45., price.get(), 1e-6);
+    }
+
+    @Test
+    public void testCompensatedDrift() throws Exception {
+
+        ObservableList<Bean> beans = FXCollections.observableArrayList();
+        SumDoubleProperties<Bean> plain = new SumDoubleProperties<>(beans, Bean::priceProperty, SumDoubleProperties.Mode.INCREMENTAL, Summation.PLAIN);
+        SumDoubleProperties<Bean> compensated = new SumDoubleProperties<>(beans, Bean::priceProperty, SumDoubleProperties.Mode.INCREMENTAL, Summation.COMPENSATED);
+
+        Random random = new Random(20160409L);
+        BigDecimal exact = BigDecimal.ZERO;
+        for (int i = 0; i < 1000; i++) {
+            beans.add(new Bean(0., 0.));
+        }
+
+        for (int i = 0; i < 1_000_000; i++) {
+            Bean bean = beans.get(random.nextInt(beans.size()));
+            // notionals from cents to hundreds of millions, both ways
+            double price = Math.round((random.nextDouble() - .5) * Math.pow(10, 2 + random.nextInt(9))) / 100.;
+            exact = exact.subtract(new BigDecimal(bean.getPrice())).add(new BigDecimal(price));
+            bean.price.set(price);
+            if (i % 1000 == 0) {
+                // an item leaving and coming back is a delta as well
+                beans.remove(bean);
+                exact = exact.subtract(new BigDecimal(bean.getPrice()));
+                assertEquals(exact.doubleValue(), compensated.get(), 2 * Math.ulp(exact.doubleValue()));
+                beans.add(bean);
+                exact = exact.add(new BigDecimal(bean.getPrice()));
+            }
+            compensated.get();
+            plain.get();
+        }
+
+        Logger.info("Drift after 1M deltas: plain " + Math.abs(plain.get() - exact.doubleValue()) + ", compensated " + Math.abs(compensated.get() - exact.doubleValue()));
+        assertEquals(exact.doubleValue(), compensated.get(), 2 * Math.ulp(exact.doubleValue()));
+
+        compensated.recompute();
+        assertEquals(exact.doubleValue(), compensated.get(), 2 * Math.ulp(exact.doubleValue()));
+    }
+
+    @Test
+    public void testCoalescedInvalidation() throws Exception {
+
+        List<Runnable> pulses = new ArrayList<>();
+        InvalidationCoalescer coalescer = new InvalidationCoalescer(pulses::add);
+
+        ObservableList<Bean> beans = FXCollections.observableArrayList();
+        SumDoubleProperties<Bean> price = new SumDoubleProperties<>(beans, Bean::priceProperty, SumDoubleProperties.Mode.INCREMENTAL);
+        SumDoubleProperties<Bean> qty = new SumDoubleProperties<>(beans, Bean::qtyProperty, SumDoubleProperties.Mode.INCREMENTAL);
+        price.setCoalescer(coalescer);
+        qty.setCoalescer(coalescer);
+        for (int i = 0; i < 1000; i++) {
+            beans.add(new Bean(1., 1.));
+        }
+        assertEquals(1, pulses.size());
+        pulses.remove(0).run();
+
+        AtomicInteger changes = new AtomicInteger();
+        price.addListener((observable, oldValue, newValue) -> changes.incrementAndGet());
+        assertEquals(1000., price.get(), 1e-6);
+        assertEquals(1000., qty.get(), 1e-6);
+        coalescer.resetCounters();
+
+        beans.forEach(bean -> bean.price.set(2.));
+        beans.forEach(bean -> bean.qty.set(3.));
+        assertEquals(0, changes.get());
+        assertEquals(1000., price.get(), 1e-6);
+        assertEquals(2000, coalescer.getRequestedCount());
+        assertEquals(1998, coalescer.getAbsorbedCount());
+
+        assertEquals(1, pulses.size());
+        pulses.remove(0).run();
+        assertEquals(1, changes.get());
+        assertEquals(1, coalescer.getFlushCount());
+        assertEquals(2000., price.get(), 1e-6);
+        assertEquals(3000., qty.get(), 1e-6);
+    }
+
     class BeanAggregator {
         ObservableList<Bean> beans = FXCollections.observableArrayList();
 